@@ -16,6 +16,8 @@ public class ExcelParameters {
 	private boolean m_headerFirst = false;
 	private FOption<String> m_pointCols = FOption.empty();
 	private FOption<String> m_excelSrid = FOption.empty();
+	private boolean m_allSheets = false;
+	private int m_nworkers = 1;
 	
 	public static ExcelParameters create() {
 		return new ExcelParameters();
@@ -56,6 +58,31 @@ public class ExcelParameters {
 		return m_excelSrid;
 	}
 	
+	public boolean allSheets() {
+		return m_allSheets;
+	}
+
+	@Option(names={"-all_sheets"}, description="read all sheets (default: the first sheet only)")
+	public ExcelParameters allSheets(boolean flag) {
+		m_allSheets = flag;
+		return this;
+	}
+	
+	public int workers() {
+		return m_nworkers;
+	}
+
+	@Option(names={"-workers"}, paramLabel="count",
+			description="number of Excel files to parse concurrently (default: 1)")
+	public ExcelParameters workers(int count) {
+		if ( count <= 0 ) {
+			throw new IllegalArgumentException("invalid worker count: " + count);
+		}
+		
+		m_nworkers = count;
+		return this;
+	}
+	
 	@Override
 	public String toString() {
 		String headerFirst = m_headerFirst ? "HF" : "";
@@ -63,6 +90,7 @@ public class ExcelParameters {
 									.getOrElse("");
 		String srcSrid = m_excelSrid.map(s -> String.format(", %s", s))
 									.getOrElse("");
-		return String.format("%s%s%s", headerFirst, ptStr, srcSrid);
+		String allSheets = m_allSheets ? ", ALL_SHEETS" : "";
+		return String.format("%s%s%s%s", headerFirst, ptStr, srcSrid, allSheets);
 	}
 }
\ No newline at end of file
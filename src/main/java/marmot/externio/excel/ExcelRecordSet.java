@@ -36,7 +36,8 @@ public class ExcelRecordSet extends AbstractRecordSet {
 	private final ExcelParameters m_params;
 	private final Workbook m_workbook;
 	private final RecordSchema m_schema;
-	private final Iterator<Row> m_iter;
+	private Iterator<Row> m_iter;
+	private int m_sheetIdx = 0;
 	private Row m_first = null;
 	
 	public static ExcelRecordSet from(InputStream is, ExcelParameters params)
@@ -57,7 +58,7 @@ public class ExcelRecordSet extends AbstractRecordSet {
 									.bufferSize(DEF_BUFFER_SIZE)
 									.open(is);
 
-		Sheet sheet = m_workbook.getSheetAt(0);
+		Sheet sheet = m_workbook.getSheetAt(m_sheetIdx);
 		
 		m_iter = sheet.iterator();
 		if ( m_params.headerFirst() ) {
@@ -90,8 +91,10 @@ public class ExcelRecordSet extends AbstractRecordSet {
 			m_first = null;
 		}
 		else {
-			if ( !m_iter.hasNext() ) {
-				return false;
+			while ( !m_iter.hasNext() ) {
+				if ( !moveToNextSheet() ) {
+					return false;
+				}
 			}
 		
 			row = m_iter.next();
@@ -101,6 +104,24 @@ public class ExcelRecordSet extends AbstractRecordSet {
 		return true;
 	}
 	
+	private boolean moveToNextSheet() {
+		if ( !m_params.allSheets() || m_sheetIdx + 1 >= m_workbook.getNumberOfSheets() ) {
+			return false;
+		}
+		
+		Sheet sheet = m_workbook.getSheetAt(++m_sheetIdx);
+		s_logger.debug("moving to the next sheet: {}", sheet.getSheetName());
+		
+		// 모든 sheet는 첫번째 sheet와 동일한 컬럼 구성을 갖는 것으로 가정하고,
+		// 각 sheet의 header 줄은 건너뛴다.
+		m_iter = sheet.iterator();
+		if ( m_params.headerFirst() && m_iter.hasNext() ) {
+			m_iter.next();
+		}
+		
+		return true;
+	}
+	
 	private RecordSchema readRecordSchema(Row header) {
 		RecordSchema.Builder builder = RecordSchema.builder();
 		
@@ -111,7 +111,12 @@ public abstract class ImportExcel extends ImportIntoDataSet {
 
 		@Override
 		protected RecordSet loadRecordSet(MarmotRuntime marmot) {
-			return new MultiFileExcelRecordSet(m_start, m_excelParams);
+			if ( m_excelParams.workers() > 1 ) {
+				return new ParallelExcelRecordSet(m_start, m_excelParams);
+			}
+			else {
+				return new MultiFileExcelRecordSet(m_start, m_excelParams);
+			}
 		}
 
 		@Override
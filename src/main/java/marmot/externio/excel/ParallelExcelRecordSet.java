@@ -0,0 +1,200 @@
+package marmot.externio.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import marmot.Record;
+import marmot.RecordSchema;
+import marmot.RecordSet;
+import marmot.RecordSetException;
+import marmot.rset.AbstractRecordSet;
+import utils.Throwables;
+import utils.Utilities;
+import utils.io.FileUtils;
+
+
+/**
+ * 여러 Excel 파일들을 주어진 수의 쓰레드를 사용하여 동시에 읽고, 그 결과들을 하나로 합친
+ * 레코드 세트.
+ * <p>
+ * 각 파일은 별도의 {@link ExcelRecordSet}(즉, 별도의 {@code StreamingReader})로 읽혀지며,
+ * 읽은 레코드들은 크기가 제한된 큐를 통해 전달된다. 모든 파일은 첫번째 파일과 동일한
+ * 레코드 스키마를 갖는 것으로 가정하며, 레코드들의 순서는 보장되지 않는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class ParallelExcelRecordSet extends AbstractRecordSet {
+	private static final Logger s_logger = LoggerFactory.getLogger(ParallelExcelRecordSet.class);
+	private static final int QUEUE_LENGTH = 4096;
+	private static final Object END = new Object();
+
+	private final File m_start;
+	private final ExcelParameters m_params;
+	private final ExecutorService m_executor;
+	private final BlockingQueue<Object> m_queue = new ArrayBlockingQueue<>(QUEUE_LENGTH);
+	private final AtomicReference<ExcelRecordSet> m_first;
+	private final RecordSchema m_schema;
+	private final int m_ncols;
+	private volatile boolean m_closed = false;
+	private int m_remains;
+
+	public ParallelExcelRecordSet(File start, ExcelParameters params) {
+		Utilities.checkNotNullArgument(params, "params is null");
+
+		m_start = start;
+		m_params = params;
+		setLogger(s_logger);
+
+		List<File> files;
+		try {
+			files = FileUtils.walk(start, "**/*.xlsx").toList();
+		}
+		catch ( IOException e ) {
+			throw new RecordSetException("fails to parse Excel, cause=" + e);
+		}
+		if ( files.isEmpty() ) {
+			throw new IllegalArgumentException("no Excel files to read: path=" + start);
+		}
+
+		// 레코드 스키마를 얻기 위해 첫번째 파일은 호출 쓰레드에서 연다.
+		ExcelRecordSet first = loadExcelFile(files.get(0));
+		m_first = new AtomicReference<>(first);
+		m_schema = first.getRecordSchema();
+		m_ncols = m_schema.getColumnCount();
+
+		int nworkers = Math.min(params.workers(), files.size());
+		getLogger().info("loading ExcelFile: from={}, nfiles={}, nworkers={}",
+							start, files.size(), nworkers);
+
+		AtomicInteger seqno = new AtomicInteger(0);
+		m_executor = Executors.newFixedThreadPool(nworkers, task -> {
+			Thread thread = new Thread(task, "excel-reader-" + seqno.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		m_remains = files.size();
+		m_executor.submit(() -> produce(files.get(0), true));
+		for ( File file: files.subList(1, files.size()) ) {
+			m_executor.submit(() -> produce(file, false));
+		}
+		m_executor.shutdown();
+	}
+
+	@Override
+	protected void closeInGuard() {
+		m_closed = true;
+
+		m_executor.shutdownNow();
+		m_queue.clear();
+		
+		// 첫번째 파일을 읽는 작업이 시작되지 않은 경우는 여기서 닫는다.
+		ExcelRecordSet first = m_first.getAndSet(null);
+		if ( first != null ) {
+			first.closeQuietly();
+		}
+	}
+
+	@Override
+	public RecordSchema getRecordSchema() {
+		return m_schema;
+	}
+
+	@Override
+	public boolean next(Record output) {
+		try {
+			while ( m_remains > 0 ) {
+				Object obj = m_queue.take();
+				if ( obj == END ) {
+					--m_remains;
+				}
+				else if ( obj instanceof Throwable ) {
+					m_remains = 0;
+					throw Throwables.toRuntimeException((Throwable)obj);
+				}
+				else {
+					Record record = (Record)obj;
+					for ( int i =0; i < m_ncols; ++i ) {
+						output.set(i, record.get(i));
+					}
+					return true;
+				}
+			}
+
+			return false;
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new RecordSetException("interrupted while reading Excel files: path=" + m_start);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[start=%s]params[%s]", getClass().getSimpleName(), m_start, m_params);
+	}
+
+	private void produce(File file, boolean preloaded) {
+		RecordSet rset = null;
+		try {
+			// 이미 열린 첫번째 파일은 닫히지 않은 경우에만 읽는다.
+			rset = preloaded ? m_first.getAndSet(null) : null;
+			if ( m_closed ) {
+				return;
+			}
+			if ( rset == null ) {
+				rset = loadExcelFile(file);
+			}
+
+			Record record;
+			while ( !m_closed && (record = rset.nextCopy()) != null ) {
+				put(record);
+			}
+			put(END);
+		}
+		catch ( Throwable e ) {
+			try {
+				put(Throwables.unwrapThrowable(e));
+			}
+			catch ( InterruptedException ignored ) { }
+		}
+		finally {
+			if ( rset != null ) {
+				rset.closeQuietly();
+			}
+		}
+	}
+
+	private void put(Object obj) throws InterruptedException {
+		// 레코드 세트가 닫힌 경우는 더 이상 대기하지 않는다.
+		while ( !m_closed ) {
+			if ( m_queue.offer(obj, 100, TimeUnit.MILLISECONDS) ) {
+				return;
+			}
+		}
+	}
+
+	private ExcelRecordSet loadExcelFile(File file) {
+		try {
+			ExcelRecordSet rset = ExcelRecordSet.from(file, m_params);
+			getLogger().info("loading: Excel[{}], {}", m_params, file);
+
+			return rset;
+		}
+		catch ( Exception e ) {
+			getLogger().warn("fails to load ExcelRecordSet: " + file + ", cause=" + e);
+			throw new RecordSetException("" + e);
+		}
+	}
+}
@@ -1,19 +1,36 @@
 package marmot.geo.command;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 import marmot.MarmotRuntime;
 import marmot.command.MarmotClientCommand;
 import marmot.command.MarmotClientCommands;
 import marmot.dataset.DataSet;
 import marmot.geo.command.RemoteGeoServerMain.Add;
+import marmot.geo.command.RemoteGeoServerMain.BuildDensity;
 import marmot.geo.command.RemoteGeoServerMain.Delete;
 import marmot.geo.command.RemoteGeoServerMain.ListDataSet;
+import marmot.geo.geoserver.GSPDensityPyramid;
 import marmot.geo.geoserver.rest.GeoServer;
+import marmot.geo.geoserver.rest.GeoServerException;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Help;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 import utils.PicocliSubCommand;
+import utils.stream.FStream;
 
 
 /**
@@ -26,7 +43,7 @@ import utils.PicocliSubCommand;
 		optionListHeading = "Options:%n",
 		description="GeoServer-related commands",
 		subcommands = {
-			ListDataSet.class, Add.class, Delete.class,
+			ListDataSet.class, Add.class, Delete.class, BuildDensity.class,
 		})
 public class RemoteGeoServerMain extends MarmotClientCommand {
 	@Option(names={"-ghost"}, paramLabel="ip",
@@ -47,12 +64,18 @@ public class RemoteGeoServerMain extends MarmotClientCommand {
 	static abstract class AbstractGeoServerCommand extends PicocliSubCommand<MarmotRuntime> {
 		abstract protected void run(MarmotRuntime marmot, GeoServer server) throws Exception;
 		
+		protected GeoServer.Options getServerOptions() {
+			return GeoServer.Options.DEFAULT;
+		}
+		
 		@Override
 		public void run(MarmotRuntime initialContext) throws Exception {
 			RemoteGeoServerMain parent = (RemoteGeoServerMain)getParent();
-			GeoServer geoServer = GeoServer.create(parent.m_host, parent.m_port, "admin", "geoserver");
-			
-			run(initialContext, geoServer);
+			try ( GeoServer geoServer = GeoServer.create(parent.m_host, parent.m_port,
+														"admin", "geoserver",
+														getServerOptions()) ) {
+				run(initialContext, geoServer);
+			}
 		}
 	}
 	
@@ -68,13 +91,128 @@ public class RemoteGeoServerMain extends MarmotClientCommand {
 	
 	@Command(name="add", description="publish dataset through GeoServer")
 	public static class Add extends AbstractGeoServerCommand {
-		@Parameters(paramLabel="dataset_id", index="0", arity="1..1", description={"dataset id"})
+		@Parameters(paramLabel="dataset_id", index="0", arity="1..1",
+					description={"dataset id (or directory/prefix with '-dir'/'-prefix')"})
 		private String m_dsId;
+		
+		@Option(names={"-dir"}, description={"publish all datasets in the directory"})
+		private boolean m_dir = false;
+		
+		@Option(names={"-prefix"}, description={"publish all datasets whose ids start with the prefix"})
+		private boolean m_prefix = false;
+		
+		@Option(names={"-workers"}, paramLabel="count",
+				description={"number of concurrent publish requests (default: 4)"})
+		private int m_nworkers = 4;
+		
+		@Option(names={"-retries"}, paramLabel="count",
+				description={"max. retries for a failed publish request (default: 3)"})
+		private int m_maxRetries = 3;
+		
+		@Override
+		protected GeoServer.Options getServerOptions() {
+			return GeoServer.Options.DEFAULT.maxConnections(m_nworkers);
+		}
 
 		@Override
 		public void run(MarmotRuntime marmot, GeoServer server) throws Exception {
-			DataSet ds = marmot.getDataSet(m_dsId);
-			server.addLayer(ds);
+			if ( !m_dir && !m_prefix ) {
+				DataSet ds = marmot.getDataSet(m_dsId);
+				server.addLayer(ds);
+				return;
+			}
+			
+			// 이미 등록된 데이터세트는 제외하고 등록한다.
+			Set<String> published = Sets.newHashSet(server.listLayers());
+			List<DataSet> candidates = FStream.from(listDataSets(marmot))
+											.filter(DataSet::hasGeometryColumn)
+											.toList();
+			List<DataSet> targets = FStream.from(candidates)
+											.filter(ds -> !published.contains(ds.getId()))
+											.toList();
+			int nskippeds = candidates.size() - targets.size();
+			System.out.printf("publishing %d datasets (workers=%d)...%n", targets.size(), m_nworkers);
+			
+			long started = System.currentTimeMillis();
+			AtomicInteger ndones = new AtomicInteger(0);
+			List<String> failures = Collections.synchronizedList(Lists.newArrayList());
+			ExecutorService executor = Executors.newFixedThreadPool(Math.max(m_nworkers, 1));
+			try {
+				for ( DataSet ds: targets ) {
+					executor.submit(() -> {
+						try {
+							publish(server, ds);
+							ndones.incrementAndGet();
+						}
+						catch ( Exception e ) {
+							failures.add(ds.getId());
+							System.err.printf("fails to publish: %s, cause=%s%n", ds.getId(), e);
+						}
+					});
+				}
+			}
+			finally {
+				executor.shutdown();
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			
+			double elapsed = Math.max(System.currentTimeMillis() - started, 1) / 1000.0;
+			System.out.printf("published=%d, failed=%d, already_published=%d, elapsed=%.1fs, "
+								+ "throughput=%.1f layers/s%n",
+								ndones.get(), failures.size(), nskippeds, elapsed,
+								ndones.get() / elapsed);
+			for ( String dsId: failures ) {
+				System.out.println("\tfailed: " + dsId);
+			}
+		}
+		
+		private List<DataSet> listDataSets(MarmotRuntime marmot) {
+			if ( m_dir ) {
+				return marmot.getDataSetAllInDir(m_dsId, true);
+			}
+			
+			int idx = m_dsId.lastIndexOf('/');
+			String dir = (idx > 0) ? m_dsId.substring(0, idx) : "/";
+			return FStream.from(marmot.getDataSetAllInDir(dir, true))
+							.filter(ds -> ds.getId().startsWith(m_dsId))
+							.toList();
+		}
+		
+		private void publish(GeoServer server, DataSet ds) throws InterruptedException {
+			long backoff = 500;
+			for ( int retry =0; ; ++retry ) {
+				try {
+					server.addLayer(ds);
+					return;
+				}
+				catch ( GeoServerException e ) {
+					// 이전 요청이 응답 전에 실패했지만 등록은 된 경우이다.
+					if ( retry > 0 && isAlreadyExists(e) ) {
+						return;
+					}
+					if ( retry >= m_maxRetries || !isRetryable(e) ) {
+						throw e;
+					}
+					
+					// 지수적으로 증가하는 대기 시간 후 재시도한다.
+					Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+					backoff = Math.min(backoff * 2, 10_000);
+				}
+			}
+		}
+		
+		/**
+		 * 입출력 오류나 서버 오류(5xx)만 재시도한다.
+		 * 잘못된 요청이나 인증 실패 등 클라이언트 오류(4xx)는 재시도해도 성공하지 않는다.
+		 */
+		private static boolean isRetryable(GeoServerException e) {
+			int code = e.getStatusCode();
+			return (code < 0) ? e.getCause() instanceof IOException : code >= 500;
+		}
+		
+		private static boolean isAlreadyExists(GeoServerException e) {
+			String msg = e.getMessage();
+			return msg != null && msg.contains("already exists");
 		}
 	}
 	
@@ -88,4 +226,23 @@ public class RemoteGeoServerMain extends MarmotClientCommand {
 			server.removeLayer(m_dsId);
 		}
 	}
+	
+	@Command(name="build_density", description="build a point-density pyramid for a dataset")
+	public static class BuildDensity extends PicocliSubCommand<MarmotRuntime> {
+		@Parameters(paramLabel="dataset_id", index="0", arity="1..1", description={"dataset id"})
+		private String m_dsId;
+		
+		@Option(names={"-min_level"}, paramLabel="level",
+				description={"coarsest pyramid level (default: 4)"})
+		private int m_minLevel = 4;
+		
+		@Option(names={"-max_level"}, paramLabel="level",
+				description={"finest pyramid level (default: 10)"})
+		private int m_maxLevel = 10;
+
+		@Override
+		public void run(MarmotRuntime marmot) throws Exception {
+			GSPDensityPyramid.build(marmot, m_dsId, m_minLevel, m_maxLevel);
+		}
+	}
 }
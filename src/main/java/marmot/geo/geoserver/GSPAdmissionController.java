@@ -0,0 +1,154 @@
+package marmot.geo.geoserver;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+import utils.Throwables;
+
+import marmot.geo.geoserver.GSPMarmotClientPool.Permit;
+
+
+/**
+ * GeoServer 요청에 따른 Marmot 질의의 동시 수행을 제한한다.
+ * <p>
+ * 전체 동시 질의 수와 데이터세트별 동시 질의 수를 각각 공정(FIFO) 세마포어로 제한하며,
+ * 주어진 시간 내에 수행 허가를 얻지 못한 질의는 거절된다. 또한 동일한 질의가 동시에
+ * 요청된 경우는 먼저 요청된 질의의 결과를 공유하도록 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPAdmissionController {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPAdmissionController.class);
+
+	private final int m_maxGlobal;
+	private final int m_maxPerDataSet;
+	private final long m_timeoutMillis;
+	private final Semaphore m_global;
+	private final ConcurrentMap<String,Semaphore> m_dsSemas = Maps.newConcurrentMap();
+	private final ConcurrentMap<String,CompletableFuture<Object>> m_inflights
+																= Maps.newConcurrentMap();
+	private final AtomicLong m_admittedCount = new AtomicLong(0);
+	private final AtomicLong m_rejectedCount = new AtomicLong(0);
+	private final AtomicLong m_coalescedCount = new AtomicLong(0);
+
+	/**
+	 * 질의 수행 제어기를 생성한다.
+	 *
+	 * @param maxGlobal		최대 동시 질의 수
+	 * @param maxPerDataSet	데이터세트별 최대 동시 질의 수
+	 * @param timeoutMillis	수행 허가 최대 대기 시간 (밀리초)
+	 */
+	GSPAdmissionController(int maxGlobal, int maxPerDataSet, long timeoutMillis) {
+		m_maxGlobal = Math.max(maxGlobal, 1);
+		m_global = new Semaphore(m_maxGlobal, true);
+		m_maxPerDataSet = Math.max(maxPerDataSet, 1);
+		m_timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * 주어진 데이터세트에 대한 질의 수행 허가를 얻는다.
+	 *
+	 * @param dsId	대상 데이터세트 식별자
+	 * @return	질의 수행 허가. 질의 수행이 끝나면 닫아야 한다.
+	 * @throws IOException	제한 시간 내에 허가를 얻지 못한 경우.
+	 */
+	Permit admit(String dsId) throws IOException {
+		Semaphore dsSema = m_dsSemas.computeIfAbsent(dsId, k -> new Semaphore(m_maxPerDataSet, true));
+
+		long started = System.currentTimeMillis();
+		try {
+			if ( !dsSema.tryAcquire(m_timeoutMillis, TimeUnit.MILLISECONDS) ) {
+				throw reject(dsId, started);
+			}
+
+			long remains = m_timeoutMillis - (System.currentTimeMillis() - started);
+			if ( !m_global.tryAcquire(Math.max(remains, 0), TimeUnit.MILLISECONDS) ) {
+				dsSema.release();
+				throw reject(dsId, started);
+			}
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting admission: dataset=" + dsId);
+		}
+
+		m_admittedCount.incrementAndGet();
+		return Permit.of(() -> {
+			m_global.release();
+			dsSema.release();
+		});
+	}
+
+	/**
+	 * 동일 키의 작업이 수행 중인 경우는 해당 작업의 결과를 기다려 반환하고,
+	 * 그렇지 않은 경우는 주어진 작업을 수행한다.
+	 *
+	 * @param key	작업 식별 키
+	 * @param task	수행할 작업
+	 * @return	작업 결과
+	 * @throws Exception	작업 수행 중 예외가 발생된 경우.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T coalesce(String key, Callable<T> task) throws Exception {
+		CompletableFuture<Object> created = new CompletableFuture<>();
+		CompletableFuture<Object> inflight = m_inflights.putIfAbsent(key, created);
+		if ( inflight != null ) {
+			m_coalescedCount.incrementAndGet();
+			s_logger.debug("coalesce in-flight query: {}", key);
+			try {
+				return (T)inflight.get();
+			}
+			catch ( ExecutionException e ) {
+				Throwable cause = Throwables.unwrapThrowable(e);
+				if ( cause instanceof Exception ) {
+					throw (Exception)cause;
+				}
+				throw Throwables.toRuntimeException(cause);
+			}
+		}
+
+		try {
+			T result = task.call();
+			created.complete(result);
+
+			return result;
+		}
+		catch ( Exception e ) {
+			created.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			m_inflights.remove(key, created);
+		}
+	}
+
+	private IOException reject(String dsId, long started) {
+		m_rejectedCount.incrementAndGet();
+
+		long waited = System.currentTimeMillis() - started;
+		s_logger.warn("reject query (overloaded): dataset={}, waited={}ms", dsId, waited);
+		return new IOException(String.format("Marmot query rejected (overloaded): dataset=%s, waited=%dms",
+											dsId, waited));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[running=%d, queued=%d, admitted=%d, rejected=%d, coalesced=%d]",
+							getClass().getSimpleName(),
+							m_maxGlobal - m_global.availablePermits(),
+							m_global.getQueueLength(), m_admittedCount.get(),
+							m_rejectedCount.get(), m_coalescedCount.get());
+	}
+}
@@ -0,0 +1,215 @@
+package marmot.geo.geoserver;
+
+import java.util.List;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Envelope;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.TransformException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import utils.func.FOption;
+
+import marmot.MarmotRuntime;
+import marmot.Plan;
+import marmot.Record;
+import marmot.RecordSet;
+
+
+/**
+ * 데이터세트의 공간 인덱스 메타데이터(클러스터별 타일 영역, 데이터 MBR, 레코드 수)를
+ * 이용하여 질의 영역에 대한 레코드 수와 MBR을 빠르게 추정한다.
+ * <p>
+ * 공간 인덱스의 타일 영역과 데이터 MBR은 경위도(EPSG:4326) 좌표로 기록되어 있으므로,
+ * 적재할 때 데이터세트 좌표계로 변환하여 보관한다. 변환된 영역은 원래 영역을 포함하도록
+ * 확장되므로 추정 결과는 보수적이다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPClusterIndex {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPClusterIndex.class);
+
+	private final String m_dsId;
+	private final List<Cluster> m_clusters;
+
+	static class Cluster {
+		final String m_quadKey;
+		final Envelope m_tileBounds;
+		final Envelope m_dataBounds;
+		final long m_count;
+		final long m_ownedCount;
+
+		Cluster(String quadKey, Envelope tileBounds, Envelope dataBounds, long count,
+				long ownedCount) {
+			m_quadKey = quadKey;
+			m_tileBounds = tileBounds;
+			m_dataBounds = dataBounds;
+			m_count = count;
+			m_ownedCount = ownedCount;
+		}
+
+		private Cluster(Record record) {
+			this(record.getString("quad_key"), (Envelope)record.get("tile_bounds"),
+				(Envelope)record.get("data_bounds"), record.getLong("count"),
+				record.getLong("owned_count"));
+		}
+
+		private Cluster transform(CoordinateReferenceSystem crs)
+			throws TransformException, FactoryException {
+			return new Cluster(m_quadKey, transform(m_tileBounds, crs), transform(m_dataBounds, crs),
+								m_count, m_ownedCount);
+		}
+
+		private static Envelope transform(Envelope envl, CoordinateReferenceSystem crs)
+			throws TransformException, FactoryException {
+			if ( envl.isNull() ) {
+				return envl;
+			}
+			return new ReferencedEnvelope(envl, DefaultGeographicCRS.WGS84).transform(crs, true);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("cluster[%s, count=%d]", m_quadKey, m_count);
+		}
+	}
+
+	/**
+	 * 주어진 데이터세트의 공간 인덱스 정보를 적재한다.
+	 *
+	 * @param marmot	marmot 객체
+	 * @param dsId		대상 데이터세트 식별자
+	 * @param crs		대상 데이터세트의 좌표계
+	 * @return	공간 인덱스 정보. 데이터세트에 공간 인덱스가 없거나 좌표계 변환에 실패한
+	 * 			경우는 {@link FOption#empty()}.
+	 */
+	static FOption<GSPClusterIndex> load(MarmotRuntime marmot, String dsId,
+										CoordinateReferenceSystem crs) {
+		Plan plan = Plan.builder("read_cluster_index")
+						.loadSpatialClusterIndexFile(dsId)
+						.project("quad_key,tile_bounds,data_bounds,count,owned_count")
+						.build();
+
+		List<Cluster> clusters = Lists.newArrayList();
+		try ( RecordSet rset = marmot.executeLocally(plan) ) {
+			Record record;
+			while ( (record = rset.nextCopy()) != null ) {
+				clusters.add(new Cluster(record));
+			}
+		}
+		catch ( Exception e ) {
+			s_logger.debug("no spatial index: dataset={}, cause={}", dsId, e.toString());
+			return FOption.empty();
+		}
+
+		try {
+			return FOption.of(of(dsId, clusters, crs));
+		}
+		catch ( TransformException | FactoryException e ) {
+			s_logger.warn("fails to transform spatial index bounds: dataset={}, cause={}",
+							dsId, e.toString());
+			return FOption.empty();
+		}
+	}
+
+	/**
+	 * 경위도 좌표로 기록된 클러스터 정보들로부터 공간 인덱스 정보를 생성한다.
+	 *
+	 * @param dsId		대상 데이터세트 식별자
+	 * @param clusters	클러스터 정보 리스트
+	 * @param crs		대상 데이터세트의 좌표계
+	 * @return	데이터세트 좌표계로 변환된 공간 인덱스 정보.
+	 */
+	static GSPClusterIndex of(String dsId, List<Cluster> clusters, CoordinateReferenceSystem crs)
+		throws TransformException, FactoryException {
+		if ( isWgs84(crs) ) {
+			return new GSPClusterIndex(dsId, clusters);
+		}
+
+		List<Cluster> transformeds = Lists.newArrayListWithCapacity(clusters.size());
+		for ( Cluster cluster: clusters ) {
+			transformeds.add(cluster.transform(crs));
+		}
+		return new GSPClusterIndex(dsId, transformeds);
+	}
+
+	private static boolean isWgs84(CoordinateReferenceSystem crs) {
+		try {
+			Integer code = CRS.lookupEpsgCode(crs, false);
+			return code != null && code == 4326;
+		}
+		catch ( FactoryException e ) {
+			return false;
+		}
+	}
+
+	private GSPClusterIndex(String dsId, List<Cluster> clusters) {
+		m_dsId = dsId;
+		m_clusters = clusters;
+	}
+
+	String getDataSetId() {
+		return m_dsId;
+	}
+
+	List<Cluster> getClusters() {
+		return m_clusters;
+	}
+
+	/**
+	 * 주어진 영역에 포함된 레코드 수의 범위를 추정한다.
+	 *
+	 * @param range	데이터세트 좌표계의 질의 영역
+	 * @return	(하한, 상한) 레코드 수. 두 값이 같은 경우는 정확한 값이다.
+	 */
+	long[] estimateCount(Envelope range) {
+		long lower = 0;
+		long upper = 0;
+		for ( Cluster cluster: m_clusters ) {
+			if ( !range.intersects(cluster.m_dataBounds) ) {
+				continue;
+			}
+
+			if ( range.contains(cluster.m_dataBounds) ) {
+				// 클러스터 전체가 영역에 포함되면 소유 레코드는 모두 결과에 포함된다.
+				lower += cluster.m_ownedCount;
+				upper += cluster.m_ownedCount;
+			}
+			else {
+				upper += cluster.m_count;
+			}
+		}
+
+		return new long[]{lower, upper};
+	}
+
+	/**
+	 * 주어진 영역에 포함된 레코드들의 MBR을 포함하는 영역을 추정한다.
+	 *
+	 * @param range	데이터세트 좌표계의 질의 영역
+	 * @return	결과 레코드들의 MBR을 포함하는 데이터세트 좌표계의 영역.
+	 */
+	Envelope estimateBounds(Envelope range) {
+		Envelope bounds = new Envelope();
+		for ( Cluster cluster: m_clusters ) {
+			Envelope overlap = cluster.m_dataBounds.intersection(range);
+			if ( !overlap.isNull() ) {
+				bounds.expandToInclude(overlap);
+			}
+		}
+
+		return bounds;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[%s, nclusters=%d]", getClass().getSimpleName(), m_dsId,
+								m_clusters.size());
+	}
+}
@@ -0,0 +1,88 @@
+package marmot.geo.geoserver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import utils.func.FOption;
+import utils.func.Lazy;
+
+import marmot.MarmotRuntime;
+import marmot.dataset.DataSet;
+import marmot.dataset.GeometryColumnInfo;
+import marmot.geo.CRSUtils;
+import marmot.geo.geotools.SimpleFeatures;
+
+
+/**
+ * {@link GSPFeatureSource} 생성에 필요한 데이터세트별 메타데이터.
+ * <p>
+ * 데이터 저장소에 캐쉬되어 동일 데이터세트에 대한 feature source들이 공유하며,
+ * MBR, 공간 인덱스 정보, 밀도 피라미드 정보, feature 타입은 처음 사용될 때 계산된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPDataSetInfo {
+	private static final long VERSION_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+	
+	private final MarmotRuntime m_marmot;
+	final String m_dsId;
+	final DataSet m_ds;
+	final GeometryColumnInfo m_gcInfo;
+	final CoordinateReferenceSystem m_crs;
+	final Lazy<ReferencedEnvelope> m_mbr;
+	final Lazy<FOption<GSPClusterIndex>> m_index;
+	final Lazy<FOption<GSPDensityPyramid>> m_density;
+	private volatile SimpleFeatureType m_sfType = null;
+	private volatile String m_version = null;
+	private volatile long m_versionChecked = 0;
+
+	GSPDataSetInfo(MarmotRuntime marmot, DataSet ds) {
+		m_marmot = marmot;
+		m_dsId = ds.getId();
+		m_ds = ds;
+		m_gcInfo = ds.getGeometryColumnInfo();
+		m_crs = CRSUtils.toCRS(m_gcInfo.srid());
+		m_mbr = Lazy.of(() -> new ReferencedEnvelope(ds.getBounds(), m_crs));
+		m_index = Lazy.of(() -> GSPClusterIndex.load(marmot, m_dsId, m_crs));
+		m_density = Lazy.of(() -> GSPDensityPyramid.load(marmot, m_dsId, m_mbr.get()));
+	}
+
+	SimpleFeatureType getFeatureType(String typeName) {
+		SimpleFeatureType sfType = m_sfType;
+		if ( sfType == null || !sfType.getTypeName().equals(typeName) ) {
+			sfType = SimpleFeatures.toSimpleFeatureType(typeName, m_gcInfo.srid(),
+														m_ds.getRecordSchema());
+			m_sfType = sfType;
+		}
+
+		return sfType;
+	}
+
+	/**
+	 * 데이터세트의 내용이 변경되었는지 구분하기 위한 버전 문자열을 반환한다.
+	 * 레코드 수와 MBR로 구성된다.
+	 * <p>
+	 * 캐쉬된 {@link DataSet} 객체의 값은 변경되지 않기 때문에, 서버에서 데이터세트 정보를
+	 * 다시 읽어 계산한다. 단, 잦은 호출을 고려하여 일정 시간 동안은 이전 값을 사용한다.
+	 */
+	String getVersion() {
+		long now = System.currentTimeMillis();
+		String version = m_version;
+		if ( version == null || (now - m_versionChecked) >= VERSION_CHECK_INTERVAL_MILLIS ) {
+			DataSet ds = m_marmot.getDataSet(m_dsId);
+			version = String.format("%d@%08x", ds.getRecordCount(), ds.getBounds().hashCode());
+			m_version = version;
+			m_versionChecked = now;
+		}
+
+		return version;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[%s, %s]", getClass().getSimpleName(), m_dsId, m_gcInfo);
+	}
+}
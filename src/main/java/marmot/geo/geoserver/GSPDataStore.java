@@ -2,6 +2,10 @@ package marmot.geo.geoserver;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.geotools.data.Transaction;
 import org.geotools.data.simple.SimpleFeatureSource;
@@ -13,10 +17,16 @@ import org.opengis.feature.type.Name;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import marmot.dataset.DataSet;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import marmot.MarmotRuntime;
 import marmot.geo.query.GeoDataStore;
 import utils.Utilities;
-import utils.stream.FStream;
+import utils.func.FOption;
 
 
 /**
@@ -26,22 +36,311 @@ import utils.stream.FStream;
 public class GSPDataStore extends ContentDataStore {
 	static final Logger s_logger = LoggerFactory.getLogger(GSPDataStore.class);
 	private static final String WORKSPACE_URI = "http://marmot.etri.re.kr";
+	private static final int MAX_CACHED_DATASETS = 1024;
 	
 	private final GeoDataStore m_store;
 	private String[] m_prefixes = new String[0];
+	private long m_catalogTtlMillis = TimeUnit.MINUTES.toMillis(1);
+	private GSPTypeNameCatalog m_catalog = null;	// guarded by 'this'
+	private boolean m_estimateByIndex = false;
+	private boolean m_reuseFeatures = false;
+	private final GSPPageCursors m_cursors = new GSPPageCursors();
+	private FOption<GSPTileCache> m_tileCache = FOption.empty();
+	private FOption<GSPMarmotClientPool.Lease> m_lease = FOption.empty();
+	private FOption<GSPAdmissionController> m_admission = FOption.empty();
+	private long m_executionTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+	private volatile LoadingCache<String,GSPDataSetInfo> m_infos;
+	private FOption<GSPVectorTileService> m_vectorTiles = FOption.empty();
+	private FOption<ExecutorService> m_parallelReads = FOption.empty();
+	private final GSPMetrics m_metrics = new GSPMetrics();
 	
 	public GSPDataStore(GeoDataStore geoStore) throws IOException {
 		Utilities.checkNotNullArgument(geoStore, "GeoDataStore is null");
 
 		m_store = geoStore;
+		m_infos = buildInfoCache(m_catalogTtlMillis);
 		setNamespaceURI(WORKSPACE_URI);
 	}
 	
-	public GSPDataStore datasetPrefixes(String... prefixes) {
+	public synchronized GSPDataStore datasetPrefixes(String... prefixes) {
 		m_prefixes = prefixes;
+		m_catalog = null;
+		return this;
+	}
+	
+	/**
+	 * 데이터세트 목록과 데이터세트 정보의 캐쉬 유효 시간을 설정한다.
+	 * 
+	 * @param ttlMillis	유효 시간 (밀리초)
+	 * @return	데이터 저장소 객체.
+	 */
+	public synchronized GSPDataStore catalogTtl(long ttlMillis) {
+		m_catalogTtlMillis = ttlMillis;
+		m_catalog = null;
+		
+		// 데이터세트 정보도 목록과 동일한 유효 시간 동안만 캐쉬한다.
+		LoadingCache<String,GSPDataSetInfo> old = m_infos;
+		m_infos = buildInfoCache(ttlMillis);
+		old.invalidateAll();
+		
+		return this;
+	}
+	
+	/**
+	 * 캐쉬된 데이터세트 목록을 무효화하여, 다음 요청시 새로 읽도록 한다.
+	 */
+	public synchronized void refreshCatalog() {
+		if ( m_catalog != null ) {
+			m_catalog.invalidate();
+		}
+	}
+	
+	public boolean estimateByIndex() {
+		return m_estimateByIndex;
+	}
+	
+	/**
+	 * 정확한 값이 필요하지 않은 레코드 수 및 MBR 질의에 대해 공간 인덱스 메타데이터를
+	 * 이용한 추정 값을 사용할지 여부를 설정한다.
+	 * 
+	 * @param flag	추정 값 사용 여부
+	 * @return	데이터 저장소 객체.
+	 */
+	public GSPDataStore estimateByIndex(boolean flag) {
+		m_estimateByIndex = flag;
+		return this;
+	}
+	
+	public boolean reuseFeatures() {
+		return m_reuseFeatures;
+	}
+	
+	/**
+	 * 질의에서 별도로 지정하지 않은 경우, 렌더링 질의의 결과 feature 객체를 재사용할지 여부를
+	 * 설정한다. 렌더링 이외의 질의에는 적용되지 않는다.
+	 * 
+	 * @param flag	재사용 여부
+	 * @return	데이터 저장소 객체.
+	 */
+	public GSPDataStore reuseFeatures(boolean flag) {
+		m_reuseFeatures = flag;
+		return this;
+	}
+	
+	/**
+	 * 타일 단위 질의 결과 캐쉬의 최대 크기를 설정한다.
+	 * 
+	 * @param maxBytes	최대 캐쉬 크기 (바이트 단위). 0 이하인 경우는 캐쉬를 사용하지 않는다.
+	 * @return	데이터 저장소 객체.
+	 */
+	public GSPDataStore tileCacheSize(long maxBytes) {
+		m_tileCache = (maxBytes > 0) ? FOption.of(new GSPTileCache(maxBytes)) : FOption.empty();
+		return this;
+	}
+	
+	/**
+	 * 타일 캐쉬를 통해 처리된 질의의 주변 타일들을 백그라운드에서 미리 적재할지 여부를
+	 * 설정한다. 타일 캐쉬를 사용하지 않는 경우는 무시된다.
+	 * 
+	 * @param flag		prefetch 사용 여부
+	 * @param nworkers	prefetch 작업 쓰레드 수
+	 * @return	데이터 저장소 객체.
+	 */
+	public GSPDataStore usePrefetch(boolean flag, int nworkers) {
+		if ( m_tileCache.isPresent() ) {
+			m_tileCache.get().setPrefetcher(flag ? new GSPTilePrefetcher(nworkers) : null);
+		}
+		return this;
+	}
+	
+	/**
+	 * 큰 영역 질의를 부분 영역들로 나누어 동시에 검색할 때 사용할 쓰레드 수를 설정한다.
+	 * 
+	 * @param nworkers	동시 검색 쓰레드 수. 1 이하인 경우는 나누어 검색하지 않는다.
+	 * @return	데이터 저장소 객체.
+	 */
+	public GSPDataStore parallelReads(int nworkers) {
+		if ( m_parallelReads.isPresent() ) {
+			m_parallelReads.get().shutdown();
+		}
+		if ( nworkers > 1 ) {
+			AtomicInteger seqno = new AtomicInteger(0);
+			m_parallelReads = FOption.of(Executors.newFixedThreadPool(nworkers, task -> {
+				Thread thread = new Thread(task, "gsp-parallel-read-" + seqno.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}));
+		}
+		else {
+			m_parallelReads = FOption.empty();
+		}
+		return this;
+	}
+	
+	FOption<ExecutorService> getParallelReadExecutor() {
+		return m_parallelReads;
+	}
+	
+	/**
+	 * 데이터 저장소가 사용하는 Marmot 클라이언트 풀 대여 객체를 설정한다.
+	 * 설정된 대여 객체는 데이터 저장소가 dispose될 때 반환된다.
+	 * 
+	 * @param lease	클라이언트 대여 객체
+	 * @return	데이터 저장소 객체.
+	 */
+	public GSPDataStore clientLease(GSPMarmotClientPool.Lease lease) {
+		m_lease = FOption.ofNullable(lease);
+		return this;
+	}
+	
+	/**
+	 * 질의 동시 수행 제한을 설정한다.
+	 * 
+	 * @param maxQueries		최대 동시 질의 수. 0 이하인 경우는 제한하지 않는다.
+	 * @param maxPerDataSet		데이터세트별 최대 동시 질의 수
+	 * @param timeoutMillis		수행 허가 최대 대기 시간 (밀리초). 대기 시간이 지난 질의는 거절된다.
+	 * @return	데이터 저장소 객체.
+	 */
+	public GSPDataStore admission(int maxQueries, int maxPerDataSet, long timeoutMillis) {
+		m_admission = (maxQueries > 0)
+					? FOption.of(new GSPAdmissionController(maxQueries, maxPerDataSet, timeoutMillis))
+					: FOption.empty();
+		return this;
+	}
+	
+	/**
+	 * Marmot 서버의 질의 수행 허가를 얻기 위한 최대 대기 시간을 설정한다.
+	 * 대기 시간이 지난 질의는 실패한다.
+	 * 
+	 * @param timeoutMillis	최대 대기 시간 (밀리초)
+	 * @return	데이터 저장소 객체.
+	 */
+	public GSPDataStore executionTimeout(long timeoutMillis) {
+		m_executionTimeoutMillis = timeoutMillis;
+		return this;
+	}
+	
+	FOption<GSPAdmissionController> getAdmissionController() {
+		return m_admission;
+	}
+	
+	/**
+	 * 주어진 데이터세트에 대해 Marmot 서버에 질의를 수행하기 위한 허가를 얻는다.
+	 * 질의 동시 수행 제한과 클라이언트 풀을 사용하지 않는 경우는 항상 즉시 허가된다.
+	 * 
+	 * @param dsId	대상 데이터세트 식별자
+	 * @return	질의 수행 허가.
+	 * @throws IOException	제한 시간 내에 허가를 얻지 못한 경우.
+	 */
+	GSPMarmotClientPool.Permit acquireExecution(String dsId) throws IOException {
+		GSPMarmotClientPool.Permit admitted = m_admission.isPresent()
+											? m_admission.get().admit(dsId)
+											: GSPMarmotClientPool.Permit.NONE;
+		if ( m_lease.isAbsent() ) {
+			return admitted;
+		}
+		
+		try {
+			GSPMarmotClientPool.Permit server = m_lease.get().acquireExecution(m_executionTimeoutMillis);
+			return GSPMarmotClientPool.Permit.of(() -> {
+				server.close();
+				admitted.close();
+			});
+		}
+		catch ( IOException e ) {
+			admitted.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * MVT 타일 생성 서비스가 사용할 타일 캐쉬 크기를 설정한다.
+	 * 
+	 * @param maxBytes	최대 캐쉬 크기 (바이트 단위). 0인 경우는 타일을 캐쉬하지 않는다.
+	 * @return	데이터 저장소 객체.
+	 */
+	public GSPDataStore vectorTileCacheSize(long maxBytes) {
+		m_vectorTiles = FOption.of(new GSPVectorTileService(this, Math.max(maxBytes, 0)));
 		return this;
 	}
 	
+	/**
+	 * 데이터세트의 z/x/y 타일을 MVT 형식으로 생성하는 서비스를 반환한다.
+	 * 
+	 * @return	MVT 타일 생성 서비스
+	 */
+	public synchronized GSPVectorTileService getVectorTileService() {
+		if ( m_vectorTiles.isAbsent() ) {
+			// 캐쉬 크기가 설정되지 않은 경우는 타일을 캐쉬하지 않는다.
+			vectorTileCacheSize(0);
+		}
+		return m_vectorTiles.get();
+	}
+	
+	MarmotRuntime getMarmotRuntime() {
+		return m_store.getMarmotRuntime();
+	}
+	
+	private LoadingCache<String,GSPDataSetInfo> buildInfoCache(long ttlMillis) {
+		return CacheBuilder.newBuilder()
+							.maximumSize(MAX_CACHED_DATASETS)
+							.expireAfterWrite(Math.max(ttlMillis, 0), TimeUnit.MILLISECONDS)
+							.build(CacheLoader.from(this::loadDataSetInfo));
+	}
+	
+	GSPDataSetInfo getDataSetInfo(String dsId) throws IOException {
+		try {
+			return m_infos.getUnchecked(dsId);
+		}
+		catch ( UncheckedExecutionException e ) {
+			throw new IOException("fails to load dataset: " + dsId, e.getCause());
+		}
+	}
+	
+	FOption<GSPTileCache> getTileCache() {
+		return m_tileCache;
+	}
+	
+	/**
+	 * 주어진 데이터세트에 대해 캐쉬된 모든 정보를 제거한다.
+	 * 
+	 * @param dsId	대상 데이터세트 식별자
+	 */
+	public void invalidate(String dsId) {
+		m_infos.invalidate(dsId);
+		if ( m_vectorTiles.isPresent() ) {
+			m_vectorTiles.get().invalidate(dsId);
+		}
+		if ( m_tileCache.isPresent() ) {
+			m_tileCache.get().invalidate(dsId);
+		}
+	}
+	
+	GSPPageCursors getPageCursors() {
+		return m_cursors;
+	}
+	
+	GSPMetrics getMetrics() {
+		return m_metrics;
+	}
+	
+	@Override
+	public void dispose() {
+		m_cursors.close();
+		if ( m_tileCache.isPresent() ) {
+			m_tileCache.get().shutdown();
+		}
+		if ( m_parallelReads.isPresent() ) {
+			m_parallelReads.get().shutdownNow();
+		}
+		m_metrics.close();
+		super.dispose();
+		
+		if ( m_lease.isPresent() ) {
+			m_lease.get().close();
+		}
+	}
+	
 	@Override
     public SimpleFeatureSource getFeatureSource(Name typeName)  throws IOException {
         return getFeatureSource(typeName.getLocalPart(), Transaction.AUTO_COMMIT);
@@ -50,35 +349,61 @@ public class GSPDataStore extends ContentDataStore {
 	@Override
 	protected ContentFeatureSource createFeatureSource(ContentEntry entry)
 		throws IOException {
-		String dsId = GSPUtils.toDataSetId(entry.getTypeName());
-		return new GSPFeatureSource(entry, m_store, dsId);
+		String typeName = entry.getTypeName();
+		FOption<String> densityOf = toDensityDataSetId(typeName);
+		if ( densityOf.isPresent() ) {
+			return new GSPDensityFeatureSource(entry, m_store.getMarmotRuntime(),
+												getDataSetInfo(densityOf.get()));
+		}
+		
+		String dsId = GSPUtils.toDataSetId(typeName);
+		return new GSPFeatureSource(entry, m_store, getDataSetInfo(dsId));
+	}
+	
+	/**
+	 * 주어진 feature 타입 이름이 밀도 feature 타입인 경우, 밀도 피라미드 대상 데이터세트의
+	 * 식별자를 반환한다.
+	 */
+	private FOption<String> toDensityDataSetId(String typeName) {
+		String suffix = GSPDensityPyramid.DIR_SUFFIX;
+		if ( !typeName.endsWith(suffix) ) {
+			return FOption.empty();
+		}
+		
+		String typeNameOf = typeName.substring(0, typeName.length() - suffix.length());
+		String dsId = GSPUtils.toDataSetId(typeNameOf);
+		return getCatalog().getDensityDataSetIds().contains(dsId)
+				? FOption.of(dsId) : FOption.empty();
+	}
+	
+	private GSPDataSetInfo loadDataSetInfo(String dsId) {
+		return new GSPDataSetInfo(m_store.getMarmotRuntime(), m_store.getGeoDataSet(dsId));
 	}
 
 	@Override
 	protected List<Name> createTypeNames() throws IOException {
-		return FStream.from(m_store.getGeoDataSetAll())
-						.map(DataSet::getId)
-						.filter(this::filterDataSetId)
-						.map(GSPUtils::toSimpleFeatureTypeName)
-						.map(name -> (Name)new NameImpl(name))
-						.toList();
-	}
-	
-	private boolean filterDataSetId(String dsId) {
-		if ( dsId.startsWith("/tmp/") ) {
-			return false;
-		}
-		if ( m_prefixes.length > 0 ) {
-			for ( String prefix: m_prefixes ) {
-				if ( dsId.startsWith(prefix) ) {
-					return true;
-				}
-			}
-
-			return false;
+		GSPTypeNameCatalog catalog = getCatalog();
+		List<Name> names = Lists.newArrayList();
+		for ( String dsId: catalog.getDataSetIds() ) {
+			names.add(new NameImpl(GSPUtils.toSimpleFeatureTypeName(dsId)));
 		}
-		else {
-			return true;
+		
+		// 밀도 피라미드가 생성된 데이터세트는 밀도 feature 타입도 함께 제공한다.
+		for ( String dsId: catalog.getDensityDataSetIds() ) {
+			String typeName = GSPUtils.toSimpleFeatureTypeName(dsId) + GSPDensityPyramid.DIR_SUFFIX;
+			names.add(new NameImpl(typeName));
+		}
+		
+		return names;
+	}
+	
+	private synchronized GSPTypeNameCatalog getCatalog() {
+		if ( m_catalog == null ) {
+			// 목록에서 제거된 데이터세트에 대해 캐쉬된 정보는 제거한다.
+			m_catalog = new GSPTypeNameCatalog(m_store, m_prefixes, m_catalogTtlMillis,
+												this::invalidate);
 		}
+		
+		return m_catalog;
 	}
 }
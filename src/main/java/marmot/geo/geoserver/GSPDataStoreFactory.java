@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFactorySpi;
@@ -13,8 +14,8 @@ import org.slf4j.LoggerFactory;
 import com.google.common.io.Files;
 
 import marmot.geo.query.GeoDataStore;
-import marmot.remote.protobuf.PBMarmotClient;
 import utils.CSV;
+import utils.func.FOption;
 
 /**
  * 
@@ -22,6 +23,7 @@ import utils.CSV;
  */
 public class GSPDataStoreFactory implements DataStoreFactorySpi {
 	private static final Logger s_logger = LoggerFactory.getLogger(GSPDataStoreFactory.class);
+	private static final int PREFETCH_WORKERS = 2;
 	
 	private static final Param MARMOT_HOST = new Param("Marmot server host", String.class,
 														"Marmot server host", true, "localhost");
@@ -38,6 +40,35 @@ public class GSPDataStoreFactory implements DataStoreFactorySpi {
 														"Enable background prefetch", false, false);
 	private static final Param MAX_LOCAL_CACHE_COST = new Param("Max. local cache cost", Integer.class,
 														"Max. local cache cost (1~)", false, 20);
+	private static final Param ESTIMATE_BY_INDEX = new Param("Estimate by spatial index", Boolean.class,
+														"Estimate count/bounds by spatial index", false, false);
+	private static final Param TILE_CACHE_SIZE = new Param("Tile cache size", Integer.class,
+														"Tile-aligned feature cache size in MB (0: disable)",
+														false, 0);
+	private static final Param REUSE_FEATURES = new Param("Reuse features", Boolean.class,
+														"Reuse feature objects while reading (rendering only)",
+														false, false);
+	private static final Param MAX_EXECUTIONS = new Param("Max. concurrent executions", Integer.class,
+														"Max. concurrent plan executions per Marmot server (first store of the server wins)",
+														false, GSPMarmotClientPool.DEFAULT_MAX_EXECUTIONS);
+	private static final Param MAX_QUERIES = new Param("Max. concurrent queries", Integer.class,
+														"Max. concurrent queries of this store (0: unlimited)",
+														false, 0);
+	private static final Param MAX_DATASET_QUERIES = new Param("Max. concurrent queries per dataset",
+														Integer.class, "Max. concurrent queries per dataset",
+														false, 8);
+	private static final Param QUERY_ADMISSION_TIMEOUT = new Param("Query admission timeout",
+														Integer.class,
+														"Max. seconds a query waits for admission or an execution slot before rejected",
+														false, 30);
+	private static final Param CATALOG_TTL = new Param("Dataset list refresh interval", Integer.class,
+														"Seconds to reuse the cached dataset list and dataset info before re-listing all of them",
+														false, 60);
+	private static final Param VECTOR_TILE_CACHE_SIZE = new Param("Vector tile cache size", Integer.class,
+														"MVT tile cache size in MB (0: disable)", false, 0);
+	private static final Param PARALLEL_READ_WORKERS = new Param("Parallel read workers", Integer.class,
+														"Threads to read split sub-ranges of a large query (0 or 1: disable)",
+														false, 0);
 	
 	public GSPDataStoreFactory() {
 	}
@@ -62,6 +93,16 @@ public class GSPDataStoreFactory implements DataStoreFactorySpi {
 			GSPDataStoreFactory.MARMOT_SAMPLE_COUNT,
 			GSPDataStoreFactory.USE_PREFETCH,
 			GSPDataStoreFactory.MAX_LOCAL_CACHE_COST,
+			GSPDataStoreFactory.ESTIMATE_BY_INDEX,
+			GSPDataStoreFactory.TILE_CACHE_SIZE,
+			GSPDataStoreFactory.REUSE_FEATURES,
+			GSPDataStoreFactory.MAX_EXECUTIONS,
+			GSPDataStoreFactory.MAX_QUERIES,
+			GSPDataStoreFactory.MAX_DATASET_QUERIES,
+			GSPDataStoreFactory.QUERY_ADMISSION_TIMEOUT,
+			GSPDataStoreFactory.CATALOG_TTL,
+			GSPDataStoreFactory.VECTOR_TILE_CACHE_SIZE,
+			GSPDataStoreFactory.PARALLEL_READ_WORKERS,
 		};
 	}
 
@@ -69,12 +110,15 @@ public class GSPDataStoreFactory implements DataStoreFactorySpi {
 	public boolean canProcess(Map<String, ?> params) {
 		try {
 			String host = (String)GSPDataStoreFactory.MARMOT_HOST.lookUp(params);
-			int port = (int)GSPDataStoreFactory.MARMOT_PORT.lookUp(params);
+			Integer port = (Integer)GSPDataStoreFactory.MARMOT_PORT.lookUp(params);
+			if ( host == null || port == null ) {
+				return false;
+			}
 			
-			PBMarmotClient marmot = PBMarmotClient.connect(host, port);
-			marmot.close();
-			
-			return true;
+			// 연결 확인에 사용된 클라이언트는 풀에 유지되어 createDataStore()에서 재사용된다.
+			try ( GSPMarmotClientPool.Lease lease = GSPMarmotClientPool.get().acquire(host, port) ) {
+				return true;
+			}
 		}
 		catch ( IOException ignored ) { }
 		
@@ -104,8 +148,14 @@ public class GSPDataStoreFactory implements DataStoreFactorySpi {
 		}
 		builder.setCacheDir(cacheDir);
 		
-		PBMarmotClient marmot = PBMarmotClient.connect(host, port);
-		builder.setMarmotRuntime(marmot);
+		// 동일 서버를 사용하는 데이터 저장소들은 하나의 클라이언트를 공유한다.
+		// 서버별 최대 동시 질의 수는 해당 서버의 클라이언트가 처음 생성될 때만 적용된다.
+		Integer maxExecs = (Integer)MAX_EXECUTIONS.lookUp(params);
+		if ( maxExecs == null ) {
+			maxExecs = 0;
+		}
+		GSPMarmotClientPool.Lease lease = GSPMarmotClientPool.get().acquire(host, port, maxExecs);
+		builder.setMarmotRuntime(lease.getClient());
 
 		Integer sampleCount = (Integer)MARMOT_SAMPLE_COUNT.lookUp(params);
 		if ( sampleCount != null ) {
@@ -120,8 +170,15 @@ public class GSPDataStoreFactory implements DataStoreFactorySpi {
 			builder.setMaxLocalCacheCost(maxCost);
 		}
 		
-		GeoDataStore geoStore = builder.build();
-		GSPDataStore store = new GSPDataStore(geoStore);
+		GSPDataStore store;
+		try {
+			GeoDataStore geoStore = builder.build();
+			store = new GSPDataStore(geoStore).clientLease(lease);
+		}
+		catch ( Exception e ) {
+			lease.close();
+			throw e;
+		}
 
 		String[] prefixes = new String[0];
 		String prefixesStr = (String)DATASET_PREFIXES.lookUp(params);
@@ -130,8 +187,44 @@ public class GSPDataStoreFactory implements DataStoreFactorySpi {
 		}
 		store.datasetPrefixes(prefixes);
 		
+		Integer catalogTtl = (Integer)CATALOG_TTL.lookUp(params);
+		if ( catalogTtl != null ) {
+			store.catalogTtl(TimeUnit.SECONDS.toMillis(catalogTtl));
+		}
+		
+		Boolean estimateByIndex = (Boolean)ESTIMATE_BY_INDEX.lookUp(params);
+		if ( estimateByIndex != null ) {
+			store.estimateByIndex(estimateByIndex);
+		}
+		
+		Integer tileCacheSize = (Integer)TILE_CACHE_SIZE.lookUp(params);
+		if ( tileCacheSize != null ) {
+			store.tileCacheSize(tileCacheSize * 1024L * 1024L);
+		}
+		store.usePrefetch(usePrefetch, PREFETCH_WORKERS);
+		
+		Boolean reuseFeatures = (Boolean)REUSE_FEATURES.lookUp(params);
+		if ( reuseFeatures != null ) {
+			store.reuseFeatures(reuseFeatures);
+		}
+		
+		Integer vtCacheSize = (Integer)VECTOR_TILE_CACHE_SIZE.lookUp(params);
+		if ( vtCacheSize != null ) {
+			store.vectorTileCacheSize(vtCacheSize * 1024L * 1024L);
+		}
+		
+		int nworkers = FOption.ofNullable((Integer)PARALLEL_READ_WORKERS.lookUp(params)).getOrElse(0);
+		store.parallelReads(nworkers);
+		
+		int maxQueries = FOption.ofNullable((Integer)MAX_QUERIES.lookUp(params)).getOrElse(0);
+		int maxDsQueries = FOption.ofNullable((Integer)MAX_DATASET_QUERIES.lookUp(params)).getOrElse(8);
+		int timeout = FOption.ofNullable((Integer)QUERY_ADMISSION_TIMEOUT.lookUp(params)).getOrElse(30);
+		store.admission(maxQueries, maxDsQueries, TimeUnit.SECONDS.toMillis(timeout));
+		store.executionTimeout(TimeUnit.SECONDS.toMillis(timeout));
+		
 		s_logger.info("create MarmotDataStore: cache[dir={}], sample_count={}, "
-					+ "prefetch={}", cacheDir, sampleCount, usePrefetch);
+					+ "prefetch={}, estimate_by_index={}, tile_cache={}MB", cacheDir, sampleCount,
+					usePrefetch, estimateByIndex, tileCacheSize);
 		
 		return store;
 	}
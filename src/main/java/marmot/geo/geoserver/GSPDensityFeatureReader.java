@@ -0,0 +1,107 @@
+package marmot.geo.geoserver;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import marmot.Record;
+import marmot.RecordSet;
+
+
+/**
+ * 밀도 피라미드의 셀 레코드들을 밀도 feature 타입의 feature로 변환하여 반환하는 reader.
+ * <p>
+ * 밀도 feature 타입은 셀의 중심점(데이터세트 레이어의 공간 컬럼 이름),
+ * 셀 식별자({@value GSPDensityPyramid#CELL_ID_COL}), 셀에 포함된 레코드 수
+ * ({@value GSPDensityPyramid#COUNT_COL}) 속성으로 구성된다. 따라서 SLD 스타일에서
+ * 레코드 수 속성을 직접 사용할 수 있다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPDensityFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+	private final SimpleFeatureType m_sfType;
+	private final RecordSet m_rset;
+	private final SimpleFeatureBuilder m_builder;
+	private final String m_geomCol;
+	private final String m_fidPrefix;
+	private Record m_next = null;
+
+	/**
+	 * 밀도 feature reader를 생성한다.
+	 *
+	 * @param densityType	밀도 feature 타입
+	 * @param rset			밀도 피라미드 셀 레코드 세트
+	 */
+	GSPDensityFeatureReader(SimpleFeatureType densityType, RecordSet rset) {
+		m_sfType = densityType;
+		m_rset = rset;
+		m_builder = new SimpleFeatureBuilder(m_sfType);
+		m_geomCol = m_sfType.getGeometryDescriptor().getLocalName();
+		m_fidPrefix = m_sfType.getTypeName() + ".";
+	}
+
+	/**
+	 * 주어진 레이어 feature 타입에 대한 밀도 feature 타입을 생성한다.
+	 *
+	 * @param layerType	데이터세트 레이어의 feature 타입
+	 * @param typeName		밀도 feature 타입 이름
+	 * @return	밀도 feature 타입
+	 */
+	static SimpleFeatureType toDensityType(SimpleFeatureType layerType, String typeName) {
+		GeometryDescriptor geomDesc = layerType.getGeometryDescriptor();
+
+		SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+		builder.setName(typeName);
+		builder.setNamespaceURI(layerType.getName().getNamespaceURI());
+		builder.setCRS(geomDesc.getCoordinateReferenceSystem());
+		builder.add(geomDesc.getLocalName(), Point.class);
+		builder.add(GSPDensityPyramid.CELL_ID_COL, Long.class);
+		builder.add(GSPDensityPyramid.COUNT_COL, Long.class);
+		builder.setDefaultGeometry(geomDesc.getLocalName());
+
+		return builder.buildFeatureType();
+	}
+
+	@Override
+	public SimpleFeatureType getFeatureType() {
+		return m_sfType;
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		if ( m_next == null ) {
+			m_next = m_rset.nextCopy();
+		}
+
+		return m_next != null;
+	}
+
+	@Override
+	public SimpleFeature next() throws IOException {
+		if ( !hasNext() ) {
+			throw new NoSuchElementException();
+		}
+		Record record = m_next;
+		m_next = null;
+
+		long cellId = ((Number)record.get(GSPDensityPyramid.CELL_ID_COL)).longValue();
+		m_builder.set(m_geomCol, (Geometry)record.get(m_geomCol));
+		m_builder.set(GSPDensityPyramid.CELL_ID_COL, cellId);
+		m_builder.set(GSPDensityPyramid.COUNT_COL, record.getLong(GSPDensityPyramid.COUNT_COL));
+
+		return m_builder.buildFeature(m_fidPrefix + cellId);
+	}
+
+	@Override
+	public void close() throws IOException {
+		m_rset.closeQuietly();
+	}
+}
@@ -0,0 +1,100 @@
+package marmot.geo.geoserver;
+
+import java.io.IOException;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.store.ContentEntry;
+import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.locationtech.jts.geom.Envelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.geometry.BoundingBox;
+
+import utils.Tuple;
+import utils.func.FOption;
+
+import marmot.MarmotRuntime;
+import marmot.Plan;
+import marmot.RecordSet;
+import marmot.geo.GeoClientUtils;
+
+
+/**
+ * 데이터세트의 밀도 피라미드를 별도의 feature 타입으로 제공하는 feature source.
+ * <p>
+ * 밀도 feature 타입의 이름은 데이터세트 feature 타입 이름에
+ * {@value GSPDensityPyramid#DIR_SUFFIX}를 붙인 것이며, 질의 영역을 표현하는데 적합한
+ * 레벨의 격자 셀들을 반환한다. GeoServer에서는 데이터세트 레이어와 밀도 레이어를 하나의
+ * 레이어 그룹으로 묶고, 각 스타일의 축척 규칙으로 표시 축척을 나누어 사용한다.
+ * <p>
+ * 속성 선택, 필터, 좌표계 변환은 GeoTools가 반환된 셀 feature들에 대해 수행한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPDensityFeatureSource extends ContentFeatureSource {
+	private final MarmotRuntime m_marmot;
+	private final GSPDataSetInfo m_info;
+
+	GSPDensityFeatureSource(ContentEntry entry, MarmotRuntime marmot, GSPDataSetInfo info) {
+		super(entry, Query.ALL);
+
+		m_marmot = marmot;
+		m_info = info;
+	}
+
+	@Override
+	protected SimpleFeatureType buildFeatureType() throws IOException {
+		String layerName = GSPUtils.toSimpleFeatureTypeName(m_info.m_dsId);
+		return GSPDensityFeatureReader.toDensityType(m_info.getFeatureType(layerName),
+													getEntry().getTypeName());
+	}
+
+	@Override
+	public GSPDataStore getDataStore() {
+		return (GSPDataStore)super.getDataStore();
+	}
+
+	@Override
+	protected ReferencedEnvelope getBoundsInternal(Query query) throws IOException {
+		// 셀 중심점들은 데이터세트 MBR 안에 위치한다.
+		return (query.getFilter() == Filter.INCLUDE) ? m_info.m_mbr.get() : null;
+	}
+
+	@Override
+	protected int getCountInternal(Query query) throws IOException {
+		// 반환될 셀의 수는 질의 영역에 따라 선택되는 레벨에 따라 달라진다.
+		return -1;
+	}
+
+	@Override
+	protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query)
+		throws IOException {
+		FOption<GSPDensityPyramid> pyramid = m_info.m_density.get();
+		if ( pyramid.isAbsent() ) {
+			throw new IOException("density pyramid is not found: dataset=" + m_info.m_dsId);
+		}
+
+		Tuple<BoundingBox,FOption<Filter>> resolved = GSPUtils.resolveQuery(m_info.m_mbr.get(),
+																			query);
+		Envelope range = (resolved._1 != null)
+						? GeoClientUtils.toEnvelope(resolved._1)
+						: m_info.m_mbr.get();
+		Plan plan = pyramid.get().toQueryPlan(range);
+
+		String dsId = m_info.m_dsId;
+		GSPMarmotClientPool.Permit permit = getDataStore().acquireExecution(dsId);
+		try {
+			RecordSet cells = m_marmot.executeToRecordSet(plan);
+			cells = new GSPPermitRecordSet(cells, permit,
+											() -> getDataStore().acquireExecution(dsId));
+			return new GSPDensityFeatureReader(getSchema(), cells);
+		}
+		catch ( Exception e ) {
+			permit.close();
+			throw new IOException("fails to query density cells: dataset=" + dsId, e);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package marmot.geo.geoserver;
+
+import static marmot.optor.AggregateFunction.COUNT;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.locationtech.jts.geom.Envelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import utils.Size2d;
+import utils.func.FOption;
+
+import marmot.Column;
+import marmot.MarmotRuntime;
+import marmot.Plan;
+import marmot.dataset.DataSet;
+import marmot.dataset.GeometryColumnInfo;
+import marmot.optor.StoreDataSetOptions;
+import marmot.optor.geo.SquareGrid;
+import marmot.plan.Group;
+
+
+/**
+ * 데이터세트에 대해 미리 계산된 격자 셀별 레코드 수 피라미드.
+ * <p>
+ * 피라미드의 각 레벨은 '{dsId}_density/Lnn' 식별자의 데이터세트로 저장되며,
+ * 레벨 {@code n}의 셀 크기는 데이터세트 MBR의 긴 변을 2<sup>n</sup>으로 나눈 크기이다.
+ * 각 레벨 데이터세트는 셀의 중심점, 셀 식별자, 셀에 포함된 레코드 수로 구성된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPDensityPyramid {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPDensityPyramid.class);
+
+	static final String DIR_SUFFIX = "_density";
+	static final String COUNT_COL = "count";
+	static final String CELL_ID_COL = "cell_id";
+	/** 화면 한 변에 표시될 셀의 수 */
+	private static final int CELLS_PER_VIEW = 128;
+
+	private final String m_dsId;
+	private final Envelope m_dsBounds;
+	private final List<Integer> m_levels;
+
+	private GSPDensityPyramid(String dsId, Envelope dsBounds, List<Integer> levels) {
+		m_dsId = dsId;
+		m_dsBounds = dsBounds;
+		m_levels = levels;
+	}
+
+	/**
+	 * 주어진 데이터세트에 대해 생성된 밀도 피라미드 정보를 적재한다.
+	 *
+	 * @param marmot	marmot 객체
+	 * @param dsId		대상 데이터세트 식별자
+	 * @param dsBounds	대상 데이터세트의 MBR
+	 * @return	밀도 피라미드. 피라미드가 생성되지 않은 경우는 {@link FOption#empty()}.
+	 */
+	static FOption<GSPDensityPyramid> load(MarmotRuntime marmot, String dsId, Envelope dsBounds) {
+		try {
+			String dir = toPyramidDir(dsId);
+			List<Integer> levels = Lists.newArrayList();
+			for ( DataSet ds: marmot.getDataSetAllInDir(dir, false) ) {
+				parseLevel(dir, ds.getId()).ifPresent(levels::add);
+			}
+			if ( levels.isEmpty() ) {
+				return FOption.empty();
+			}
+			Collections.sort(levels);
+
+			return FOption.of(new GSPDensityPyramid(dsId, dsBounds, levels));
+		}
+		catch ( Exception e ) {
+			s_logger.debug("no density pyramid: dataset={}, cause={}", dsId, e.toString());
+			return FOption.empty();
+		}
+	}
+
+	/**
+	 * 주어진 데이터세트에 대한 밀도 피라미드를 생성한다.
+	 * 이미 생성된 레벨 데이터세트는 새로 생성된 것으로 대체된다.
+	 *
+	 * @param marmot	marmot 객체
+	 * @param dsId		대상 데이터세트 식별자
+	 * @param minLevel	최소 레벨
+	 * @param maxLevel	최대 레벨
+	 */
+	public static void build(MarmotRuntime marmot, String dsId, int minLevel, int maxLevel) {
+		if ( minLevel < 0 || minLevel > maxLevel ) {
+			throw new IllegalArgumentException(String.format("invalid level range: [%d, %d]",
+																minLevel, maxLevel));
+		}
+
+		DataSet ds = marmot.getDataSet(dsId);
+		GeometryColumnInfo gcInfo = ds.getGeometryColumnInfo();
+		Envelope bounds = ds.getBounds();
+		double span = Math.max(bounds.getWidth(), bounds.getHeight());
+		if ( span <= 0 ) {
+			throw new IllegalArgumentException("dataset has an empty extent: " + dsId);
+		}
+
+		String geomCol = gcInfo.name();
+		String prjExpr = String.format("cell_geom as %s,%s,%s", geomCol, CELL_ID_COL, COUNT_COL);
+		for ( int level = minLevel; level <= maxLevel; ++level ) {
+			double cellSize = span / (1L << level);
+			SquareGrid grid = new SquareGrid(bounds, new Size2d(cellSize, cellSize));
+
+			String levelId = toLevelId(dsId, level);
+			Plan plan = Plan.builder("build_density_pyramid")
+							.load(dsId)
+							.assignGridCell(geomCol, grid, false)
+							.aggregateByGroup(Group.ofKeys(CELL_ID_COL).tags("cell_geom"),
+												COUNT())
+							.centroid("cell_geom")
+							.project(prjExpr)
+							.store(levelId, StoreDataSetOptions.FORCE(gcInfo))
+							.build();
+			marmot.execute(plan);
+
+			s_logger.info("built density level: {}, cell_size={}", levelId, cellSize);
+		}
+	}
+
+	/**
+	 * 주어진 데이터세트가 밀도 피라미드의 레벨 데이터세트인 경우, 피라미드 대상 데이터세트의
+	 * 식별자를 반환한다.
+	 * <p>
+	 * 대상 데이터세트가 함께 검색되었고, 레벨 식별자 형식과 레벨 데이터세트의 스키마를 모두
+	 * 만족하는 경우만 레벨 데이터세트로 판단한다. 따라서 우연히 '{dsId}_density/Lnn' 형식의
+	 * 이름을 갖는 사용자 데이터세트는 레벨 데이터세트로 취급되지 않는다.
+	 *
+	 * @param ds		검사 대상 데이터세트
+	 * @param dsIds		함께 검색된 데이터세트 식별자 집합
+	 * @return	대상 데이터세트 식별자. 레벨 데이터세트가 아닌 경우는 {@link FOption#empty()}.
+	 */
+	static FOption<String> getBaseDataSetId(DataSet ds, Set<String> dsIds) {
+		String dsId = ds.getId();
+		int idx = dsId.lastIndexOf(DIR_SUFFIX + "/L");
+		if ( idx <= 0 ) {
+			return FOption.empty();
+		}
+
+		String baseId = dsId.substring(0, idx);
+		if ( !dsIds.contains(baseId) || parseLevel(toPyramidDir(baseId), dsId).isAbsent() ) {
+			return FOption.empty();
+		}
+
+		// 레벨 데이터세트는 셀 중심점, 셀 식별자, 레코드 수 컬럼으로 구성된다.
+		Set<String> cols = Sets.newHashSet();
+		for ( Column col: ds.getRecordSchema().getColumns() ) {
+			cols.add(col.name());
+		}
+		boolean matched = cols.size() == 3 && cols.contains(CELL_ID_COL) && cols.contains(COUNT_COL)
+						&& ds.hasGeometryColumn();
+		return matched ? FOption.of(baseId) : FOption.empty();
+	}
+
+	static String toPyramidDir(String dsId) {
+		return dsId + DIR_SUFFIX;
+	}
+
+	public static String toLevelId(String dsId, int level) {
+		return String.format("%s/L%02d", toPyramidDir(dsId), level);
+	}
+
+	/**
+	 * 주어진 질의 영역을 표현하는데 적합한 레벨의 밀도 데이터세트를 검색하는 plan을 생성한다.
+	 *
+	 * @param range		질의 영역
+	 * @return	셀 검색 plan
+	 */
+	Plan toQueryPlan(Envelope range) {
+		int level = selectLevel(range);
+		s_logger.debug("serve density level: dataset={}, level={}", m_dsId, level);
+
+		return Plan.builder("query_density")
+					.query(toLevelId(m_dsId, level), range)
+					.build();
+	}
+
+	List<Integer> getLevels() {
+		return Collections.unmodifiableList(m_levels);
+	}
+
+	private int selectLevel(Envelope range) {
+		double dsSpan = Math.max(m_dsBounds.getWidth(), m_dsBounds.getHeight());
+		double viewSpan = Math.max(range.getWidth(), range.getHeight());
+
+		// 질의 영역 한 변에 약 CELLS_PER_VIEW개의 셀이 포함되는 레벨 이하 중 가장 상세한 레벨을 고른다.
+		int desired = (viewSpan > 0)
+					? (int)Math.floor(Math.log(dsSpan * CELLS_PER_VIEW / viewSpan) / Math.log(2))
+					: Integer.MAX_VALUE;
+		int selected = m_levels.get(0);
+		for ( int level: m_levels ) {
+			if ( level <= desired ) {
+				selected = level;
+			}
+		}
+
+		return selected;
+	}
+
+	private static FOption<Integer> parseLevel(String dir, String id) {
+		String prefix = dir + "/L";
+		if ( !id.startsWith(prefix) ) {
+			return FOption.empty();
+		}
+
+		try {
+			return FOption.of(Integer.parseInt(id.substring(prefix.length())));
+		}
+		catch ( NumberFormatException e ) {
+			return FOption.empty();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("density_pyramid[%s, levels=%s]", m_dsId, getLevels());
+	}
+}
@@ -1,25 +1,57 @@
 package marmot.geo.geoserver;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
+import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureReader;
+import org.geotools.data.FilteringFeatureReader;
 import org.geotools.data.Query;
+import org.geotools.data.ReTypeFeatureReader;
+import org.geotools.data.crs.ForceCoordinateSystemFeatureReader;
+import org.geotools.data.crs.ReprojectFeatureReader;
+import org.geotools.data.sort.SortedFeatureReader;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.util.factory.Hints;
 import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.Point;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
 import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.TransformException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import utils.Size2d;
 import utils.Throwables;
 import utils.Tuple;
+import utils.Tuple3;
 import utils.func.FOption;
 import utils.func.Lazy;
+import utils.io.IOUtils;
+import utils.stream.FStream;
 
 import marmot.MarmotRuntime;
 import marmot.Plan;
@@ -27,12 +59,13 @@ import marmot.PlanBuilder;
 import marmot.RecordSet;
 import marmot.dataset.DataSet;
 import marmot.dataset.GeometryColumnInfo;
-import marmot.geo.CRSUtils;
 import marmot.geo.GeoClientUtils;
 import marmot.geo.geotools.MarmotFeatureIterator;
-import marmot.geo.geotools.SimpleFeatures;
+import marmot.geo.geoserver.GSPTileCache.TileGrid;
 import marmot.geo.query.GeoDataStore;
 import marmot.optor.AggregateFunction;
+import marmot.optor.geo.SquareGrid;
+import marmot.plan.Group;
 
 
 /**
@@ -41,52 +74,141 @@ import marmot.optor.AggregateFunction;
  */
 public class GSPFeatureSource extends ContentFeatureSource {
 	private static final Logger s_logger = LoggerFactory.getLogger(GSPFeatureSource.class);
+	private static final int MAX_SAMPLE_GRID_SIZE = 256;
+	private static final String SAMPLE_POINT_COL = "__sample_pt";
 	
 	private final MarmotRuntime m_marmot;
 	private final GeoDataStore m_store;
 	private final String m_dsId;
+	private final GSPDataSetInfo m_info;
 	private final DataSet m_ds;
 	private final GeometryColumnInfo m_gcInfo;
 	private final CoordinateReferenceSystem m_crs;
 	private final Lazy<ReferencedEnvelope> m_mbr;
+	private final Lazy<GSPFilterTranslator> m_translator;
+	private final Lazy<FOption<GSPClusterIndex>> m_index;
 	
-	GSPFeatureSource(ContentEntry entry, GeoDataStore store, String dsId) {
+	GSPFeatureSource(ContentEntry entry, GeoDataStore store, GSPDataSetInfo info) {
 		super(entry, Query.ALL);
 		
+		// 데이터세트 메타데이터는 데이터 저장소에 캐쉬된 것을 공유한다.
 		m_marmot = store.getMarmotRuntime();
 		m_store = store;
-		m_dsId = dsId;
-		m_ds = store.getGeoDataSet(dsId);
-
-		m_gcInfo = m_ds.getGeometryColumnInfo();
-		m_crs = CRSUtils.toCRS(m_gcInfo.srid());
-		m_mbr = Lazy.of(() -> {
-			Envelope bounds = m_ds.getBounds();
-			return new ReferencedEnvelope(bounds, m_crs);
-		});
+		m_info = info;
+		m_dsId = info.m_dsId;
+		m_ds = info.m_ds;
+		m_gcInfo = info.m_gcInfo;
+		m_crs = info.m_crs;
+		m_mbr = info.m_mbr;
+		m_index = info.m_index;
+		m_translator = Lazy.of(() -> new GSPFilterTranslator(getSchema()));
 	}
 	
 	public RecordSet query(Envelope range) throws Exception {
-		return m_store.createRangeQuery(m_dsId, range).run();
+		return withPermit(() -> m_store.createRangeQuery(m_dsId, range).run());
+	}
+
+	private RecordSet queryRange(Envelope range, FOption<List<String>> cols,
+								FOption<Double> simplifyTol) throws Exception {
+		return withPermit(toRangeQuery(range, cols, simplifyTol));
+	}
+	
+	/**
+	 * 주어진 영역에 대한 질의를 수행하는 작업을 생성한다.
+	 * 생성된 작업은 질의 수행 허가를 얻지 않는다.
+	 */
+	private Callable<RecordSet> toRangeQuery(Envelope range, FOption<List<String>> cols,
+											FOption<Double> simplifyTol) {
+		if ( cols.isAbsent() && simplifyTol.isAbsent() ) {
+			return () -> m_store.createRangeQuery(m_dsId, range).run();
+		}
+		
+		PlanBuilder builder = Plan.builder("query_Dataset")
+									.query(m_dsId, range);
+		if ( simplifyTol.isPresent() ) {
+			builder = builder.update(toSimplifyExpr(simplifyTol.get()));
+		}
+		if ( cols.isPresent() ) {
+			builder = builder.project(FStream.from(cols.get()).join(","));
+		}
+		Plan plan = builder.build();
+		return () -> m_marmot.executeToRecordSet(plan);
+	}
+
+	@Override
+	protected void addHints(Set<Hints.Key> hints) {
+		hints.add(Hints.FEATURE_DETACHED);
+		hints.add(GSPHints.SAMPLE_COUNT);
+		
+		// 렌더러는 지원되는 hint만 질의에 설정하므로, 렌더링 질의를 구분할 수 있도록
+		// 점 데이터세트도 단순화 hint를 지원한다. 점 데이터세트는 단순화하지 않는다.
+		hints.add(Hints.GEOMETRY_SIMPLIFICATION);
+		hints.add(Hints.GEOMETRY_DISTANCE);
+	}
+
+	@Override
+	protected boolean canFilter() {
+		return true;
+	}
+
+	@Override
+	protected boolean canReproject() {
+		return true;
 	}
 
 	@Override
 	protected ReferencedEnvelope getBoundsInternal(Query query) throws IOException {
+		ReferencedEnvelope bounds = getNativeBounds(query);
+		CoordinateReferenceSystem target = query.getCoordinateSystemReproject();
+		if ( bounds == null || bounds.isNull() || target == null
+			|| CRS.equalsIgnoreMetadata(target, bounds.getCoordinateReferenceSystem()) ) {
+			return bounds;
+		}
+		
+		try {
+			return bounds.transform(target, true);
+		}
+		catch ( TransformException | FactoryException e ) {
+			throw new IOException("fails to transform bounds: target=" + target, e);
+		}
+	}
+	
+	private ReferencedEnvelope getNativeBounds(Query query) throws IOException {
 		try {
 			if ( query == Query.ALL ) {
 				return m_mbr.get();
 			}
 			else {
-				Tuple<BoundingBox, FOption<Filter>> resolved
-										= GSPUtils.resolveQuery(m_mbr.get(), query);
+				Tuple3<BoundingBox,FOption<String>,Filter> resolved = resolveQuery(query);
+				if ( resolved._3 != Filter.INCLUDE ) {
+					// 클라이언트 측 필터가 필요한 경우는 bounds를 빠르게 계산할 수 없다.
+					return null;
+				}
 				if ( resolved._1 == null && resolved._2.isAbsent() ) {
 					return new ReferencedEnvelope(m_mbr.get());
 				}
+				if ( resolved._2.isAbsent() ) {
+					Envelope range = GeoClientUtils.toEnvelope(resolved._1);
+					if ( range.contains(m_mbr.get()) ) {
+						return new ReferencedEnvelope(m_mbr.get());
+					}
+					if ( estimateByIndex() ) {
+						// 공간 인덱스가 없는 경우는 bounds를 빠르게 계산할 수 없다.
+						return m_index.get()
+									.map(idx -> new ReferencedEnvelope(idx.estimateBounds(range), m_crs))
+									.getOrNull();
+					}
+				}
 				
 				Plan plan = newPlanBuilder(resolved._1, resolved._2)
 							.aggregate(AggregateFunction.ENVELOPE(m_gcInfo.name()))
 							.build();
-				FOption<Envelope> envl = m_marmot.executeToSingle(plan);
+				String key = String.format("bounds|%s|%s|%s", m_dsId, resolved._1, resolved._2);
+				FOption<Envelope> envl = coalesce(key, () -> {
+					try ( GSPMarmotClientPool.Permit permit = getDataStore().acquireExecution(m_dsId) ) {
+						return m_marmot.executeToSingle(plan);
+					}
+				});
 				return envl.map(mbr -> new ReferencedEnvelope(mbr, m_crs))
 							.getOrElse(() -> new ReferencedEnvelope());
 			}
@@ -98,49 +220,703 @@ public class GSPFeatureSource extends ContentFeatureSource {
 
 	@Override
 	protected int getCountInternal(Query query) throws IOException {
-		Tuple<BoundingBox, FOption<Filter>> resolved
-										= GSPUtils.resolveQuery(m_mbr.get(), query);
+		Tuple3<BoundingBox,FOption<String>,Filter> resolved = resolveQuery(query);
+		if ( resolved._3 != Filter.INCLUDE ) {
+			return -1;
+		}
 		if ( resolved._1 == null && resolved._2.isAbsent() ) {
 			return (int)m_ds.getRecordCount();
 		}
+		if ( resolved._2.isAbsent() ) {
+			Envelope range = GeoClientUtils.toEnvelope(resolved._1);
+			if ( range.contains(m_mbr.get()) ) {
+				return (int)m_ds.getRecordCount();
+			}
+			
+			FOption<GSPClusterIndex> idx = m_index.get();
+			if ( idx.isPresent() ) {
+				long[] bounds = idx.get().estimateCount(range);
+				if ( bounds[0] == bounds[1] || estimateByIndex() ) {
+					// 정확한 값이거나, 추정 값이 허용된 경우는 상한 값을 사용한다.
+					return (int)Math.min(bounds[1], Integer.MAX_VALUE);
+				}
+			}
+			else if ( estimateByIndex() ) {
+				return -1;
+			}
+		}
 		
 		Plan plan = newPlanBuilder(resolved._1, resolved._2)
 						.aggregate(AggregateFunction.COUNT())
 						.build();
-		return m_marmot.executeToLong(plan).get().intValue();
+		try {
+			// 동시에 요청된 동일한 질의는 하나의 서버 수행 결과를 공유한다.
+			String key = String.format("count|%s|%s|%s", m_dsId, resolved._1, resolved._2);
+			return coalesce(key, () -> {
+				try ( GSPMarmotClientPool.Permit permit = getDataStore().acquireExecution(m_dsId) ) {
+					return m_marmot.executeToLong(plan).get().intValue();
+				}
+			});
+		}
+		catch ( IOException e ) {
+			throw e;
+		}
+		catch ( Exception e ) {
+			throw new IOException(e);
+		}
 	}
 
 	@Override
 	protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query) {
 		try {
-			Tuple<BoundingBox, FOption<Filter>> resolved
-											= GSPUtils.resolveQuery(m_mbr.get(), query);
-			BoundingBox bbox = resolved._1;
-			Envelope range = GeoClientUtils.toEnvelope(bbox.getMinX(), bbox.getMinY(),
-														bbox.getMaxX(), bbox.getMaxY());
-			RecordSet rset = query(range);
-			return new GSPFeatureReader(getSchema(), new MarmotFeatureIterator(getSchema(),
-										rset));
+			if ( !canSort(query) ) {
+				// 정렬, 결과 수 제한, 시작 위치는 모두 GeoTools에서 처리된다.
+				return openReader(query, FOption.empty());
+			}
+			
+			int limit = query.getMaxFeatures();
+			int offset = FOption.ofNullable(query.getStartIndex()).getOrElse(0);
+			if ( query.getStartIndex() == null ) {
+				if ( query.isMaxFeaturesUnlimited() ) {
+					return openReader(query, FOption.empty());
+				}
+				else {
+					FeatureReader<SimpleFeatureType, SimpleFeature> reader
+														= openReader(query, FOption.of(limit));
+					return new GSPPagingFeatureReader(reader, 0, 0, limit,
+													r -> IOUtils.closeQuietly(r.getSource()));
+				}
+			}
+			
+			// 페이지 요청인 경우는 이전 페이지에서 사용하던 커서가 있으면 이를 이어서 사용한다.
+			GSPPageCursors cursors = getDataStore().getPageCursors();
+			String key = GSPPageCursors.toCursorKey(m_dsId, query);
+			FOption<GSPPageCursors.Cursor> cursor = cursors.take(key, offset);
+			if ( cursor.isPresent() ) {
+				return cursors.page(key, cursor.get().getReader(), cursor.get().getPermitteds(),
+									offset, 0, limit);
+			}
+			else {
+				List<GSPPermitRecordSet> permitteds = Lists.newArrayList();
+				FeatureReader<SimpleFeatureType, SimpleFeature> reader
+												= openReader(query, FOption.empty(), permitteds);
+				return cursors.page(key, reader, permitteds, 0, offset, limit);
+			}
 		}
 		catch ( Throwable e ) {
 			throw Throwables.toRuntimeException(Throwables.unwrapThrowable(e));
 		}
 	}
 
+	/**
+	 * 주어진 질의의 정렬 조건을 서버 또는 클라이언트 측 정렬로 처리할 수 있는지 여부를 반환한다.
+	 * 처리할 수 없는 경우(역 자연 순서, 공간 컬럼 등)는 GeoTools가 정렬한다.
+	 */
+	@Override
+	protected boolean canSort(Query query) {
+		return isSortable(getEffectiveSortBy(query));
+	}
+
+	@Override
+	protected boolean canLimit() {
+		return true;
+	}
+
+	/**
+	 * 정렬을 GeoTools에 맡기는 질의는 결과 수 제한도 정렬 후에 적용되어야 한다.
+	 */
+	@Override
+	protected boolean canLimit(Query query) {
+		return canSort(query);
+	}
+
+	@Override
+	protected boolean canOffset() {
+		return true;
+	}
+
+	@Override
+	protected boolean canOffset(Query query) {
+		return canSort(query);
+	}
+	
+	private FeatureReader<SimpleFeatureType, SimpleFeature> openReader(Query query,
+																FOption<Integer> takeCount)
+		throws Exception {
+		return openReader(query, takeCount, Lists.newArrayList());
+	}
+	
+	/**
+	 * 질의에 해당하는 feature reader를 생성한다.
+	 * 생성된 reader가 사용하는 질의 수행 허가 레코드 세트는 {@code permitteds}에 추가된다.
+	 */
+	private FeatureReader<SimpleFeatureType, SimpleFeature> openReader(Query query,
+																FOption<Integer> takeCount,
+																List<GSPPermitRecordSet> permitteds)
+		throws Exception {
+		long started = System.nanoTime();
+		Tuple3<BoundingBox,FOption<String>,Filter> resolved = resolveQuery(query);
+		Envelope queryRange = (resolved._1 != null) ? GeoClientUtils.toEnvelope(resolved._1)
+													: m_mbr.get();
+		GSPLayerMetrics metrics = getMetrics();
+		metrics.onQuery(toAreaRatio(queryRange));
+		
+		// 정렬 키가 모두 일반 컬럼인 경우는 서버에서 정렬하고,
+		// 그렇지 않은 경우는 클라이언트 측에서 정렬한다.
+		// GeoTools가 정렬하는 질의는 정렬 조건을 무시한다.
+		SortBy[] sortBy = canSort(query) ? getEffectiveSortBy(query) : new SortBy[0];
+		FOption<String> sortKeys = toSortKeyExpr(sortBy);
+		boolean clientSort = sortBy.length > 0 && sortKeys.isAbsent();
+		List<String> clientSortCols = clientSort ? toSortColumns(sortBy) : Collections.emptyList();
+		
+		// 질의에서 요구하는 컬럼과 잔여 필터 적용 및 클라이언트 측 정렬에 필요한 컬럼만
+		// 서버에서 받아온다.
+		FOption<List<String>> resultCols = getRequestedColumns(query);
+		FOption<List<String>> fetchCols = resultCols.map(cols -> toFetchColumns(cols, resolved._3,
+																				clientSortCols));
+		SimpleFeatureType nativeFetchType = fetchCols.map(this::retype).getOrElse(getSchema());
+		boolean fetchGeom = fetchCols.map(cols -> cols.contains(m_gcInfo.name())).getOrElse(true);
+		boolean filterGeom = resolved._3 != Filter.INCLUDE
+							&& Arrays.asList(DataUtilities.attributeNames(resolved._3, getSchema()))
+									.contains(m_gcInfo.name());
+		
+		// 렌더링 축척에 따른 공간 객체 단순화는 서버에서 수행하여 전송되는 좌표 수를 줄인다.
+		// 단, 클라이언트 측 필터가 공간 컬럼을 사용하는 경우는 원래 공간 객체가 필요하다.
+		FOption<Double> simplifyTol = getSimplificationTolerance(query)
+										.filter(tol -> fetchGeom && !filterGeom);
+		
+		// 결과 좌표계 변환이 요청된 경우는 가능하면 서버에서 변환하여 받아온다.
+		FOption<CoordinateReferenceSystem> reproject = (fetchGeom && !filterGeom)
+													? getPushdownTargetCrs(query)
+													: FOption.empty();
+		SimpleFeatureType fetchType = reproject.map(crs -> retype(nativeFetchType, crs))
+												.getOrElse(nativeFetchType);
+		
+		// 표본 질의인 경우는 결과 수 제한을 넘지 않도록 표본 수를 조정한다.
+		// 표본 추출 결과는 표본 수를 넘지 않으므로, 추출된 표본 일부가 잘려 나가지 않는다.
+		// 클라이언트 측 필터가 있는 경우는 필터 적용 전에 추출하게 되므로 표본 추출을 하지 않는다.
+		FOption<Integer> sampleCount = (resolved._3 == Filter.INCLUDE)
+										? getSampleCount(query, queryRange)
+											.map(cnt -> Math.min(cnt, takeCount.getOrElse(cnt)))
+										: FOption.empty();
+		
+		// 클라이언트 측 필터나 정렬이 있는 경우는 서버에서 결과 수를 제한할 수 없다.
+		FOption<Integer> take = (resolved._3 == Filter.INCLUDE && !clientSort)
+								? takeCount : FOption.empty();
+		
+		boolean serverOps = resolved._2.isPresent() || take.isPresent() || sortKeys.isPresent()
+							|| sampleCount.isPresent();
+		FOption<GSPTileCache> tileCache = getDataStore().getTileCache();
+		// 타일 캐쉬와 분할 검색은 데이터세트 좌표계의 공간 객체를 기준으로 동작한다.
+		boolean cacheable = !serverOps && resolved._1 != null && tileCache.isPresent()
+							&& fetchGeom && reproject.isAbsent();
+		
+		// 캐쉬되지 않는 큰 영역 질의는 공간 클러스터 크기의 부분 영역들로 나누어 동시에 검색한다.
+		// 단, 앞쪽 일부 결과만 사용하는 페이지 질의나 정렬 없는 제한 질의는 나누지 않는다.
+		boolean partial = query.getStartIndex() != null
+						|| (takeCount.isPresent() && sortBy.length == 0);
+		FOption<TileGrid> splits = FOption.empty();
+		FOption<ExecutorService> parallel = getDataStore().getParallelReadExecutor();
+		if ( !serverOps && !cacheable && !partial && parallel.isPresent()
+			&& m_index.get().isPresent() && fetchGeom && reproject.isAbsent() ) {
+			splits = GSPParallelRecordSet.selectGrid(m_index.get().get(), m_mbr.get(), queryRange);
+		}
+		
+		RecordSet rset;
+		if ( splits.isPresent() ) {
+			// 부분 영역 질의들은 동시에 수행되므로 각각 수행 허가를 얻고,
+			// 부분 영역 검색이 끝나면 바로 반환한다.
+			rset = new GSPParallelRecordSet(parallel.get(), splits.get(), queryRange,
+											m_gcInfo.name(),
+											bounds -> queryRange(bounds, fetchCols, simplifyTol));
+		}
+		else if ( cacheable ) {
+			// 단순 영역 질의는 타일 캐쉬를 통해 처리하여 유사한 영역의 질의와 결과를 공유한다.
+			// 단순화된 결과는 허용 오차별로 별도의 타일로 관리한다.
+			String variant = fetchCols.map(cols -> FStream.from(cols).join(",")).getOrElse("")
+							+ simplifyTol.map(tol -> "|simplify=" + tol).getOrElse("");
+			rset = tileCache.get().query(m_dsId, variant, m_mbr.get(), m_gcInfo.name(),
+										queryRange, metrics,
+										bounds -> queryRange(bounds, fetchCols, simplifyTol));
+		}
+		else if ( serverOps || fetchCols.isPresent() || simplifyTol.isPresent()
+				|| reproject.isPresent() ) {
+			// 변환된 필터나 projection이 있으면 서버에서 처리된 결과만 받아온다.
+			PlanBuilder builder = newPlanBuilder(resolved._1, resolved._2);
+			if ( sampleCount.isPresent() ) {
+				builder = appendStratifiedSampling(builder, queryRange, sampleCount.get());
+			}
+			if ( sortKeys.isPresent() ) {
+				builder = builder.sort(sortKeys.get());
+			}
+			if ( take.isPresent() ) {
+				builder = builder.take(take.get());
+			}
+			if ( simplifyTol.isPresent() ) {
+				builder = builder.update(toSimplifyExpr(simplifyTol.get()));
+			}
+			if ( reproject.isPresent() ) {
+				builder = builder.transformCrs(m_gcInfo.name(), m_gcInfo.srid(),
+												toSrid(reproject.get()).get());
+			}
+			if ( fetchCols.isPresent() ) {
+				builder = builder.project(FStream.from(fetchCols.get()).join(","));
+			}
+			else if ( sampleCount.isPresent() ) {
+				// 표본 추출에 사용된 중심점과 격자 셀 컬럼들을 제거한다.
+				builder = builder.project(FStream.from(getSchema().getAttributeDescriptors())
+												.map(AttributeDescriptor::getLocalName)
+												.join(","));
+			}
+			rset = execute(builder.build());
+		}
+		else {
+			rset = query(queryRange);
+		}
+		
+		collectPermitted(rset, permitteds);
+		
+		// feature 변환 시간 측정을 위해 레코드 수신 대기 시간을 따로 측정한다.
+		GSPMeteredRecordSet metered = new GSPMeteredRecordSet(rset, false, r -> { });
+		rset = metered;
+		
+		FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+		if ( !clientSort && isFeatureReusable(query) ) {
+			// 클라이언트 측 정렬은 feature 객체들을 보관하기 때문에 재사용할 수 없다.
+			reader = new GSPReusingFeatureReader(fetchType, rset);
+		}
+		else {
+			reader = new GSPFeatureReader(fetchType, new MarmotFeatureIterator(fetchType, rset));
+		}
+		if ( resolved._3 != Filter.INCLUDE ) {
+			reader = new FilteringFeatureReader<>(reader, resolved._3);
+		}
+		if ( clientSort ) {
+			// GeoTools의 merge-sort를 사용하여 대량의 경우는 디스크를 이용하여 정렬한다.
+			reader = new SortedFeatureReader(DataUtilities.simple(reader), query);
+		}
+		if ( resultCols.isPresent() && !resultCols.get().equals(fetchCols.get()) ) {
+			SimpleFeatureType resultType = retype(resultCols.get());
+			if ( reproject.isPresent() ) {
+				resultType = retype(resultType, reproject.get());
+			}
+			reader = new ReTypeFeatureReader(reader, resultType);
+		}
+		
+		if ( reproject.isAbsent() ) {
+			reader = reprojectOnClient(reader, query);
+		}
+		
+		return new GSPMeteredFeatureReader(reader, metrics, started, metered);
+	}
+
+	@Override
+	protected boolean canRetype() {
+		return true;
+	}
+
 	@Override
 	protected SimpleFeatureType buildFeatureType() throws IOException {
-		return SimpleFeatures.toSimpleFeatureType(getEntry().getTypeName(), m_gcInfo.srid(),
-													m_ds.getRecordSchema());
+		return m_info.getFeatureType(getEntry().getTypeName());
+	}
+	
+	@Override
+	public GSPDataStore getDataStore() {
+		return (GSPDataStore)super.getDataStore();
+	}
+	
+	private <T> T coalesce(String key, Callable<T> task) throws Exception {
+		FOption<GSPAdmissionController> admission = getDataStore().getAdmissionController();
+		return admission.isPresent() ? admission.get().coalesce(key, task) : task.call();
 	}
 	
-	private PlanBuilder newPlanBuilder(BoundingBox bbox, FOption<Filter> filter) {
+	private RecordSet execute(Plan plan) throws Exception {
+		return withPermit(() -> m_marmot.executeToRecordSet(plan));
+	}
+	
+	private static void collectPermitted(RecordSet rset, List<GSPPermitRecordSet> permitteds) {
+		if ( rset instanceof GSPPermitRecordSet ) {
+			permitteds.add((GSPPermitRecordSet)rset);
+		}
+	}
+	
+	/**
+	 * 서버 질의 수행 허가를 얻은 후 질의를 수행한다.
+	 * 얻은 허가는 반환된 레코드 세트가 닫힐 때 반환된다.
+	 */
+	private RecordSet withPermit(Callable<RecordSet> exec) throws Exception {
+		GSPMarmotClientPool.Permit permit = getDataStore().acquireExecution(m_dsId);
+		try {
+			GSPLayerMetrics metrics = getMetrics();
+			long started = System.nanoTime();
+			RecordSet rset = exec.call();
+			metrics.onPlanExecuted(System.nanoTime() - started);
+			
+			rset = new GSPMeteredRecordSet(rset, true, r -> metrics.onTransferred(r.getBytes()));
+			return new GSPPermitRecordSet(rset, permit,
+										() -> getDataStore().acquireExecution(m_dsId));
+		}
+		catch ( Exception e ) {
+			permit.close();
+			throw e;
+		}
+	}
+	
+	private GSPLayerMetrics getMetrics() {
+		return getDataStore().getMetrics().get(m_dsId);
+	}
+	
+	private double toAreaRatio(Envelope range) {
+		double dsArea = m_mbr.get().getArea();
+		return (dsArea > 0) ? range.intersection(m_mbr.get()).getArea() / dsArea : 1;
+	}
+	
+	/**
+	 * 주어진 질의를 (검색 영역, 서버에서 수행할 필터 표현식, 클라이언트에서 적용할 필터)로
+	 * 분리한다.
+	 */
+	private Tuple3<BoundingBox,FOption<String>,Filter> resolveQuery(Query query) {
+		Tuple<BoundingBox,FOption<Filter>> resolved = GSPUtils.resolveQuery(m_mbr.get(), query);
+		
+		Filter filter = resolved._2.getOrElse(Filter.INCLUDE);
+		Tuple<FOption<String>,Filter> translated = m_translator.get().translate(filter);
+		
+		return Tuple.of(resolved._1, translated._1, translated._2);
+	}
+	
+	/**
+	 * 렌더링을 위한 질의인지 여부를 반환한다.
+	 * GeoServer의 렌더러는 질의 hint에 공간 객체 단순화 거리를 설정한다.
+	 */
+	private static boolean isRenderingQuery(Query query) {
+		Hints hints = query.getHints();
+		return hints.get(Hints.GEOMETRY_SIMPLIFICATION) != null
+			|| hints.get(Hints.GEOMETRY_DISTANCE) != null;
+	}
+	
+	/**
+	 * 질의 결과 feature 객체를 재사용할 수 있는지 여부를 반환한다.
+	 * 질의 hint에 {@link Hints#FEATURE_DETACHED}가 명시된 경우는 이를 따르고,
+	 * 그렇지 않은 경우는 렌더링 질의에 한해 데이터 저장소 설정을 따른다.
+	 * WFS 등 feature 객체를 보관할 수 있는 질의에는 재사용하지 않는다.
+	 */
+	private boolean isFeatureReusable(Query query) {
+		Object detached = query.getHints().get(Hints.FEATURE_DETACHED);
+		if ( detached instanceof Boolean ) {
+			return !(Boolean)detached;
+		}
+		else {
+			return isRenderingQuery(query) && getDataStore().reuseFeatures();
+		}
+	}
+	
+	/**
+	 * 질의 hint에 포함된 표본 수를 반환한다.
+	 * 질의 영역의 레코드 수가 표본 수 이하로 추정되는 경우는 표본을 추출할 필요가 없다.
+	 */
+	private FOption<Integer> getSampleCount(Query query, Envelope range) {
+		Object count = query.getHints().get(GSPHints.SAMPLE_COUNT);
+		if ( !(count instanceof Number) || ((Number)count).intValue() <= 0 ) {
+			return FOption.empty();
+		}
+		
+		int sampleCount = ((Number)count).intValue();
+		long estimate = m_index.get()
+								.map(idx -> idx.estimateCount(range)[1])
+								.getOrElse(m_ds::getRecordCount);
+		return (estimate > sampleCount) ? FOption.of(sampleCount) : FOption.empty();
+	}
+	
+	/**
+	 * 질의 영역을 표본 수에 맞춘 정사각 격자로 나누고, 셀별로 고르게 레코드를 추출하는 연산을
+	 * 추가한다.
+	 * <p>
+	 * 격자 한 변의 셀 수는 floor(sqrt(표본 수))이며 (최대 {@value #MAX_SAMPLE_GRID_SIZE}),
+	 * 셀별 추출 수는 전체 추출 수가 표본 수를 넘지 않도록 정해진다. 따라서 추출된 표본을
+	 * 다시 잘라낼 필요가 없다. 레코드가 없는 셀이 많은 경우는 결과 레코드 수가 표본 수보다
+	 * 적을 수 있다.
+	 * <p>
+	 * 여러 셀에 걸친 선이나 면 객체가 중복되어 추출되지 않도록, 셀 할당은 공간 객체의
+	 * 중심점을 기준으로 한다.
+	 */
+	private PlanBuilder appendStratifiedSampling(PlanBuilder builder, Envelope range,
+												int sampleCount) {
+		int gridSize = Math.max(1, Math.min((int)Math.sqrt(sampleCount), MAX_SAMPLE_GRID_SIZE));
+		double cellWidth = Math.max(range.getWidth(), 1e-9) / gridSize;
+		double cellHeight = Math.max(range.getHeight(), 1e-9) / gridSize;
+		SquareGrid grid = new SquareGrid(range, new Size2d(cellWidth, cellHeight));
+		
+		int quota = Math.max(1, sampleCount / (gridSize * gridSize));
+		String cellGeomCol = m_gcInfo.name();
+		if ( !isPointType() ) {
+			cellGeomCol = SAMPLE_POINT_COL;
+			builder = builder.defineColumn(SAMPLE_POINT_COL + ":point",
+											String.format("ST_Centroid(%s)", m_gcInfo.name()));
+		}
+		return builder.assignGridCell(cellGeomCol, grid, false)
+						.takeByGroup(Group.ofKeys(GSPDensityPyramid.CELL_ID_COL), quota);
+	}
+	
+	/**
+	 * 질의 hint에 포함된 공간 객체 단순화 허용 오차를 반환한다.
+	 * <p>
+	 * 유사한 축척의 질의들이 타일 캐쉬를 공유할 수 있도록, 허용 오차는 요청 값을 넘지 않는
+	 * 가장 큰 2의 거듭제곱 값으로 조정된다.
+	 */
+	private FOption<Double> getSimplificationTolerance(Query query) {
+		if ( isPointType() ) {
+			return FOption.empty();
+		}
+		
+		Hints hints = query.getHints();
+		Object dist = hints.get(Hints.GEOMETRY_SIMPLIFICATION);
+		if ( dist == null ) {
+			dist = hints.get(Hints.GEOMETRY_DISTANCE);
+		}
+		if ( !(dist instanceof Number) ) {
+			return FOption.empty();
+		}
+		
+		double tol = ((Number)dist).doubleValue();
+		if ( !(tol > 0) || Double.isInfinite(tol) ) {
+			return FOption.empty();
+		}
+		
+		return FOption.of(Math.pow(2, Math.floor(Math.log(tol) / Math.log(2))));
+	}
+	
+	private String toSimplifyExpr(double tolerance) {
+		String geomCol = m_gcInfo.name();
+		return String.format("%s = ST_Simplify(%s, %s)", geomCol, geomCol, tolerance);
+	}
+	
+	private boolean isPointType() {
+		GeometryDescriptor desc = getSchema().getGeometryDescriptor();
+		if ( desc == null ) {
+			return true;
+		}
+		
+		Class<?> binding = desc.getType().getBinding();
+		return Point.class.isAssignableFrom(binding) || MultiPoint.class.isAssignableFrom(binding);
+	}
+	
+	private boolean estimateByIndex() {
+		return getDataStore().estimateByIndex();
+	}
+	
+	/**
+	 * 질의에서 요구하는 컬럼 이름 리스트를 질의에 명시된 순서대로 반환한다.
+	 * 모든 컬럼을 스키마 순서대로 요구하는 경우는 {@link FOption#empty()}를 반환한다.
+	 */
+	private FOption<List<String>> getRequestedColumns(Query query) {
+		String[] names = query.getPropertyNames();
+		if ( names == null ) {
+			return FOption.empty();
+		}
+		
+		// 스키마에 없는 이름과 중복된 이름은 제외한다.
+		Set<String> cols = Sets.newLinkedHashSet();
+		for ( String name: names ) {
+			if ( getSchema().getDescriptor(name) != null ) {
+				cols.add(name);
+			}
+		}
+		
+		List<String> requested = Lists.newArrayList(cols);
+		List<String> all = FStream.from(getSchema().getAttributeDescriptors())
+									.map(AttributeDescriptor::getLocalName)
+									.toList();
+		return requested.equals(all) ? FOption.empty() : FOption.of(requested);
+	}
+	
+	/**
+	 * 서버에서 받아올 컬럼 리스트를 반환한다.
+	 * <p>
+	 * 잔여 필터와 클라이언트 측 정렬이 없는 경우는 결과 컬럼을 그 순서대로 받아오고,
+	 * 그렇지 않은 경우는 필터와 정렬에서 사용하는 컬럼을 추가하여 스키마 순서대로 받아온다.
+	 * 결과 컬럼이 하나도 없는 경우({@link Query#NO_NAMES})에도 결과 레코드 수를 유지하기 위해
+	 * 하나의 컬럼은 받아온다.
+	 */
+	private List<String> toFetchColumns(List<String> resultCols, Filter residual,
+										List<String> sortCols) {
+		if ( residual == Filter.INCLUDE && !resultCols.isEmpty() && resultCols.containsAll(sortCols) ) {
+			return resultCols;
+		}
+		
+		Set<String> cols = Sets.newHashSet(resultCols);
+		if ( residual != Filter.INCLUDE ) {
+			cols.addAll(Arrays.asList(DataUtilities.attributeNames(residual, getSchema())));
+		}
+		cols.addAll(sortCols);
+		if ( cols.isEmpty() ) {
+			// 가능하면 크기가 작은 일반 컬럼 하나를 받아온다.
+			String col = m_gcInfo.name();
+			for ( AttributeDescriptor desc: getSchema().getAttributeDescriptors() ) {
+				if ( !(desc instanceof GeometryDescriptor) ) {
+					col = desc.getLocalName();
+					break;
+				}
+			}
+			return Collections.singletonList(col);
+		}
+		
+		return toSchemaOrder(cols);
+	}
+	
+	private List<String> toSchemaOrder(Collection<String> names) {
+		return FStream.from(getSchema().getAttributeDescriptors())
+						.map(AttributeDescriptor::getLocalName)
+						.filter(names::contains)
+						.toList();
+	}
+	
+	private SortBy[] getEffectiveSortBy(Query query) {
+		SortBy[] sortBy = query.getSortBy();
+		if ( sortBy == null ) {
+			return new SortBy[0];
+		}
+		
+		// 자연 순서 정렬은 별도의 정렬이 필요없다.
+		return FStream.of(sortBy)
+						.filter(sb -> sb != SortBy.NATURAL_ORDER)
+						.toArray(SortBy.class);
+	}
+	
+	/**
+	 * 주어진 정렬 조건을 서버 또는 클라이언트 측에서 정렬할 수 있는지 검사한다.
+	 * GeoTools의 merge-sort는 역 자연 순서와 공간 컬럼에 대한 정렬을 지원하지 않는다.
+	 */
+	private boolean isSortable(SortBy[] sortBy) {
+		if ( sortBy.length == 0 || toSortKeyExpr(sortBy).isPresent() ) {
+			return true;
+		}
+		
+		for ( SortBy sb: sortBy ) {
+			if ( sb == SortBy.REVERSE_ORDER || sb.getPropertyName() == null ) {
+				return false;
+			}
+			
+			AttributeDescriptor desc = getSchema().getDescriptor(sb.getPropertyName()
+																	.getPropertyName());
+			if ( desc == null || desc instanceof GeometryDescriptor ) {
+				return false;
+			}
+		}
+		
+		return SortedFeatureReader.canSort(getSchema(), sortBy);
+	}
+	
+	private static List<String> toSortColumns(SortBy[] sortBy) {
+		return FStream.of(sortBy)
+						.map(sb -> sb.getPropertyName().getPropertyName())
+						.toList();
+	}
+	
+	/**
+	 * 주어진 정렬 조건을 Marmot 정렬 키 표현식으로 변환한다.
+	 * 정렬 키 중 하나라도 일반 컬럼이 아닌 경우는 {@link FOption#empty()}를 반환한다.
+	 */
+	private FOption<String> toSortKeyExpr(SortBy[] sortBy) {
+		if ( sortBy.length == 0 ) {
+			return FOption.empty();
+		}
+		
+		List<String> keys = Lists.newArrayList();
+		for ( SortBy sb: sortBy ) {
+			if ( sb.getPropertyName() == null ) {
+				return FOption.empty();
+			}
+			
+			AttributeDescriptor desc = getSchema().getDescriptor(sb.getPropertyName()
+																	.getPropertyName());
+			if ( desc == null || desc instanceof GeometryDescriptor ) {
+				return FOption.empty();
+			}
+			
+			String order = (sb.getSortOrder() == SortOrder.DESCENDING) ? "D" : "A";
+			keys.add(String.format("%s:%s", desc.getLocalName(), order));
+		}
+		
+		return FOption.of(FStream.from(keys).join(","));
+	}
+	
+	private SimpleFeatureType retype(List<String> cols) {
+		return SimpleFeatureTypeBuilder.retype(getSchema(), cols);
+	}
+	
+	private static SimpleFeatureType retype(SimpleFeatureType type, CoordinateReferenceSystem crs) {
+		return SimpleFeatureTypeBuilder.retype(type, crs);
+	}
+	
+	/**
+	 * 질의 결과 좌표계 변환 중 서버에서 수행할 수 있는 변환의 대상 좌표계를 반환한다.
+	 * <p>
+	 * 변환 대상 좌표계가 EPSG 코드로 식별되고 축 순서가 (동, 북)인 경우만 서버에서 변환한다.
+	 * 질의에서 데이터세트의 좌표계를 재정의한 경우는 GeoTools의 방식대로 클라이언트 측에서 처리한다.
+	 */
+	private FOption<CoordinateReferenceSystem> getPushdownTargetCrs(Query query) {
+		CoordinateReferenceSystem target = query.getCoordinateSystemReproject();
+		if ( target == null || CRS.equalsIgnoreMetadata(target, m_crs) ) {
+			return FOption.empty();
+		}
+		CoordinateReferenceSystem forced = query.getCoordinateSystem();
+		if ( forced != null && !CRS.equalsIgnoreMetadata(forced, m_crs) ) {
+			return FOption.empty();
+		}
+		if ( CRS.getAxisOrder(target) != CRS.AxisOrder.EAST_NORTH ) {
+			return FOption.empty();
+		}
+		
+		return toSrid(target).isPresent() ? FOption.of(target) : FOption.empty();
+	}
+	
+	private static FOption<String> toSrid(CoordinateReferenceSystem crs) {
+		try {
+			return FOption.ofNullable(CRS.lookupEpsgCode(crs, true))
+							.map(code -> "EPSG:" + code);
+		}
+		catch ( FactoryException e ) {
+			return FOption.empty();
+		}
+	}
+	
+	/**
+	 * 서버에서 처리되지 않은 좌표계 재정의와 좌표계 변환을 클라이언트 측에서 수행하는
+	 * reader를 반환한다.
+	 */
+	private FeatureReader<SimpleFeatureType, SimpleFeature>
+	reprojectOnClient(FeatureReader<SimpleFeatureType, SimpleFeature> reader, Query query)
+		throws SchemaException {
+		if ( reader.getFeatureType().getGeometryDescriptor() == null ) {
+			return reader;
+		}
+		
+		CoordinateReferenceSystem source = m_crs;
+		CoordinateReferenceSystem forced = query.getCoordinateSystem();
+		if ( forced != null && !CRS.equalsIgnoreMetadata(forced, m_crs) ) {
+			reader = new ForceCoordinateSystemFeatureReader(reader, forced);
+			source = forced;
+		}
+		
+		CoordinateReferenceSystem target = query.getCoordinateSystemReproject();
+		if ( target != null && !CRS.equalsIgnoreMetadata(target, source) ) {
+			reader = new ReprojectFeatureReader(reader, target);
+		}
+		
+		return reader;
+	}
+	
+	private PlanBuilder newPlanBuilder(BoundingBox bbox, FOption<String> filterExpr) {
 		PlanBuilder builder = Plan.builder("query_Dataset");
 		
 		if ( bbox != null ) {
 			builder = builder.query(m_dsId, GeoClientUtils.toEnvelope(bbox));
 		}
 		else {
-			builder.load(m_dsId);
+			builder = builder.load(m_dsId);
+		}
+		if ( filterExpr.isPresent() ) {
+			builder = builder.filter(filterExpr.get());
 		}
 		
 		return builder;
@@ -0,0 +1,438 @@
+package marmot.geo.geoserver;
+
+import java.util.List;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.util.Converters;
+import org.geotools.util.factory.GeoTools;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.Not;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.PropertyIsLike;
+import org.opengis.filter.PropertyIsNil;
+import org.opengis.filter.PropertyIsNotEqualTo;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.spatial.BinarySpatialOperator;
+import org.opengis.filter.spatial.Contains;
+import org.opengis.filter.spatial.Intersects;
+import org.opengis.filter.spatial.Within;
+
+import com.google.common.collect.Lists;
+
+import utils.Tuple;
+import utils.func.FOption;
+import utils.stream.FStream;
+
+import marmot.geo.GeoClientUtils;
+
+
+/**
+ * GeoTools(OpenGIS) {@link Filter}를 Marmot 필터 표현식으로 변환한다.
+ * <p>
+ * 변환이 불가능한 부분 필터는 클라이언트 측에서 적용할 잔여 필터(post-filter)로 남긴다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPFilterTranslator {
+	private static final FilterFactory2 FILTER_FACT
+					= CommonFactoryFinder.getFilterFactory2(GeoTools.getDefaultHints());
+	private static final GeometryFactory GEOM_FACT = new GeometryFactory();
+
+	private final SimpleFeatureType m_sfType;
+
+	GSPFilterTranslator(SimpleFeatureType sfType) {
+		m_sfType = sfType;
+	}
+
+	/**
+	 * 주어진 필터를 Marmot 필터 표현식과 잔여 필터로 분리한다.
+	 *
+	 * @param filter	변환 대상 필터
+	 * @return	(Marmot 필터 표현식, 클라이언트에서 적용할 잔여 필터).
+	 * 			잔여 필터가 없는 경우는 {@link Filter#INCLUDE}가 반환된다.
+	 */
+	Tuple<FOption<String>,Filter> translate(Filter filter) {
+		if ( filter == null || filter == Filter.INCLUDE ) {
+			return Tuple.of(FOption.empty(), Filter.INCLUDE);
+		}
+
+		if ( filter instanceof And ) {
+			List<String> exprs = Lists.newArrayList();
+			List<Filter> residuals = Lists.newArrayList();
+			for ( Filter child: ((And)filter).getChildren() ) {
+				Tuple<FOption<String>,Filter> ret = translate(child);
+				if ( ret._1.isPresent() ) {
+					exprs.add(ret._1.get());
+				}
+				if ( ret._2 != Filter.INCLUDE ) {
+					residuals.add(ret._2);
+				}
+			}
+
+			FOption<String> expr = exprs.isEmpty()
+								? FOption.empty()
+								: FOption.of(FStream.from(exprs).join(" && "));
+			Filter residual;
+			switch ( residuals.size() ) {
+				case 0:
+					residual = Filter.INCLUDE;
+					break;
+				case 1:
+					residual = residuals.get(0);
+					break;
+				default:
+					residual = FILTER_FACT.and(residuals);
+					break;
+			}
+			return Tuple.of(expr, residual);
+		}
+
+		FOption<String> expr = toExpression(filter);
+		if ( expr.isPresent() ) {
+			return Tuple.of(expr, Filter.INCLUDE);
+		}
+		else {
+			return Tuple.of(FOption.empty(), filter);
+		}
+	}
+
+	private FOption<String> toExpression(Filter filter) {
+		if ( filter == Filter.INCLUDE ) {
+			return FOption.of("true");
+		}
+		else if ( filter == Filter.EXCLUDE ) {
+			return FOption.of("false");
+		}
+		else if ( filter instanceof And ) {
+			return toJunction(((And)filter).getChildren(), " && ");
+		}
+		else if ( filter instanceof Or ) {
+			return toJunction(((Or)filter).getChildren(), " || ");
+		}
+		else if ( filter instanceof Not ) {
+			return toExpression(((Not)filter).getFilter())
+						.map(expr -> String.format("!(%s)", expr));
+		}
+		else if ( filter instanceof BinaryComparisonOperator ) {
+			return toComparison((BinaryComparisonOperator)filter);
+		}
+		else if ( filter instanceof PropertyIsBetween ) {
+			return toBetween((PropertyIsBetween)filter);
+		}
+		else if ( filter instanceof PropertyIsLike ) {
+			return toLike((PropertyIsLike)filter);
+		}
+		else if ( filter instanceof PropertyIsNull ) {
+			return toAttributeName(((PropertyIsNull)filter).getExpression())
+						.map(col -> String.format("%s == null", col));
+		}
+		else if ( filter instanceof PropertyIsNil ) {
+			return toAttributeName(((PropertyIsNil)filter).getExpression())
+						.map(col -> String.format("%s == null", col));
+		}
+		else if ( filter instanceof BinarySpatialOperator ) {
+			return toSpatialPredicate((BinarySpatialOperator)filter);
+		}
+		else {
+			return FOption.empty();
+		}
+	}
+
+	private FOption<String> toJunction(List<Filter> children, String op) {
+		List<String> exprs = Lists.newArrayList();
+		for ( Filter child: children ) {
+			FOption<String> expr = toExpression(child);
+			if ( expr.isAbsent() ) {
+				// 하나라도 변환되지 않으면 전체를 변환할 수 없다.
+				return FOption.empty();
+			}
+			exprs.add(String.format("(%s)", expr.get()));
+		}
+
+		return FOption.of(FStream.from(exprs).join(op));
+	}
+
+	private FOption<String> toComparison(BinaryComparisonOperator cmp) {
+		String op;
+		if ( cmp instanceof PropertyIsEqualTo ) {
+			op = "==";
+		}
+		else if ( cmp instanceof PropertyIsNotEqualTo ) {
+			op = "!=";
+		}
+		else if ( cmp instanceof PropertyIsLessThan ) {
+			op = "<";
+		}
+		else if ( cmp instanceof PropertyIsLessThanOrEqualTo ) {
+			op = "<=";
+		}
+		else if ( cmp instanceof PropertyIsGreaterThan ) {
+			op = ">";
+		}
+		else if ( cmp instanceof PropertyIsGreaterThanOrEqualTo ) {
+			op = ">=";
+		}
+		else {
+			return FOption.empty();
+		}
+
+		Expression left = cmp.getExpression1();
+		Expression right = cmp.getExpression2();
+		if ( left instanceof Literal && right instanceof PropertyName ) {
+			Expression tmp = left;
+			left = right;
+			right = tmp;
+			op = flip(op);
+		}
+		if ( !(left instanceof PropertyName && right instanceof Literal) ) {
+			return FOption.empty();
+		}
+
+		FOption<String> col = toAttributeName(left);
+		if ( col.isAbsent() ) {
+			return FOption.empty();
+		}
+		Class<?> binding = getBinding(col.get());
+		if ( !cmp.isMatchingCase() && binding == String.class ) {
+			return FOption.empty();
+		}
+		FOption<String> value = toLiteral((Literal)right, binding);
+		if ( value.isAbsent() ) {
+			return FOption.empty();
+		}
+
+		if ( op.equals("==") || op.equals("!=") ) {
+			return FOption.of(String.format("%s %s %s", col.get(), op, value.get()));
+		}
+		else {
+			// 비교 대상 컬럼 값이 null인 경우는 OGC 의미에 따라 false가 되도록 한다.
+			return FOption.of(String.format("(%s != null && %s %s %s)",
+											col.get(), col.get(), op, value.get()));
+		}
+	}
+
+	private FOption<String> toBetween(PropertyIsBetween between) {
+		FOption<String> col = toAttributeName(between.getExpression());
+		if ( col.isAbsent()
+			|| !(between.getLowerBoundary() instanceof Literal)
+			|| !(between.getUpperBoundary() instanceof Literal) ) {
+			return FOption.empty();
+		}
+
+		Class<?> binding = getBinding(col.get());
+		FOption<String> lower = toLiteral((Literal)between.getLowerBoundary(), binding);
+		FOption<String> upper = toLiteral((Literal)between.getUpperBoundary(), binding);
+		if ( lower.isAbsent() || upper.isAbsent() ) {
+			return FOption.empty();
+		}
+
+		return FOption.of(String.format("(%s != null && %s >= %s && %s <= %s)",
+										col.get(), col.get(), lower.get(),
+										col.get(), upper.get()));
+	}
+
+	private FOption<String> toLike(PropertyIsLike like) {
+		FOption<String> col = toAttributeName(like.getExpression());
+		if ( col.isAbsent() || getBinding(col.get()) != String.class ) {
+			return FOption.empty();
+		}
+
+		String pattern = like.getLiteral();
+		String wildCard = like.getWildCard();
+		if ( pattern == null || wildCard == null || wildCard.isEmpty()
+			|| (like.getSingleChar() != null && !like.getSingleChar().isEmpty()
+				&& pattern.contains(like.getSingleChar()))
+			|| (like.getEscape() != null && !like.getEscape().isEmpty()
+				&& pattern.contains(like.getEscape())) ) {
+			return FOption.empty();
+		}
+
+		boolean leading = pattern.startsWith(wildCard);
+		if ( leading ) {
+			pattern = pattern.substring(wildCard.length());
+			if ( pattern.isEmpty() || pattern.equals(wildCard) ) {
+				return FOption.of(String.format("%s != null", col.get()));
+			}
+		}
+		boolean trailing = pattern.endsWith(wildCard);
+		if ( trailing ) {
+			pattern = pattern.substring(0, pattern.length() - wildCard.length());
+		}
+		if ( pattern.contains(wildCard) ) {
+			// 문자열 중간에 wildcard가 포함된 패턴은 지원하지 않는다.
+			return FOption.empty();
+		}
+
+		String target = col.get();
+		if ( !like.isMatchingCase() ) {
+			target = target + ".toLowerCase()";
+			pattern = pattern.toLowerCase();
+		}
+		String literal = quote(pattern);
+
+		String cond;
+		if ( leading && trailing ) {
+			cond = String.format("%s.contains(%s)", target, literal);
+		}
+		else if ( leading ) {
+			cond = String.format("%s.endsWith(%s)", target, literal);
+		}
+		else if ( trailing ) {
+			cond = String.format("%s.startsWith(%s)", target, literal);
+		}
+		else {
+			cond = String.format("%s == %s", target, literal);
+		}
+
+		return FOption.of(String.format("(%s != null && %s)", col.get(), cond));
+	}
+
+	private FOption<String> toSpatialPredicate(BinarySpatialOperator op) {
+		String func;
+		if ( op instanceof BBOX || op instanceof Intersects ) {
+			func = "ST_Intersects";
+		}
+		else if ( op instanceof Within ) {
+			func = "ST_Within";
+		}
+		else if ( op instanceof Contains ) {
+			func = "ST_Contains";
+		}
+		else {
+			return FOption.empty();
+		}
+
+		Expression left = op.getExpression1();
+		Expression right = op.getExpression2();
+		if ( left instanceof Literal && right instanceof PropertyName ) {
+			Expression tmp = left;
+			left = right;
+			right = tmp;
+
+			if ( func.equals("ST_Within") ) {
+				func = "ST_Contains";
+			}
+			else if ( func.equals("ST_Contains") ) {
+				func = "ST_Within";
+			}
+		}
+		if ( !(left instanceof PropertyName && right instanceof Literal) ) {
+			return FOption.empty();
+		}
+
+		FOption<String> col = toGeometryName((PropertyName)left);
+		if ( col.isAbsent() ) {
+			return FOption.empty();
+		}
+
+		Geometry key;
+		if ( op instanceof BBOX ) {
+			Envelope envl = GeoClientUtils.toEnvelope(((BBOX)op).getBounds());
+			key = GEOM_FACT.toGeometry(envl);
+		}
+		else {
+			key = ((Literal)right).evaluate(null, Geometry.class);
+		}
+		if ( key == null ) {
+			return FOption.empty();
+		}
+
+		return FOption.of(String.format("%s(%s, ST_GeomFromText(%s))", func, col.get(),
+										quote(key.toText())));
+	}
+
+	private FOption<String> toAttributeName(Expression expr) {
+		if ( !(expr instanceof PropertyName) ) {
+			return FOption.empty();
+		}
+
+		String name = ((PropertyName)expr).getPropertyName();
+		AttributeDescriptor desc = m_sfType.getDescriptor(name);
+		if ( desc == null || desc instanceof GeometryDescriptor ) {
+			return FOption.empty();
+		}
+
+		return FOption.of(desc.getLocalName());
+	}
+
+	private FOption<String> toGeometryName(PropertyName prop) {
+		String name = prop.getPropertyName();
+		if ( name == null || name.isEmpty() ) {
+			return FOption.ofNullable(m_sfType.getGeometryDescriptor())
+							.map(GeometryDescriptor::getLocalName);
+		}
+
+		AttributeDescriptor desc = m_sfType.getDescriptor(name);
+		if ( desc instanceof GeometryDescriptor ) {
+			return FOption.of(desc.getLocalName());
+		}
+		else {
+			return FOption.empty();
+		}
+	}
+
+	private Class<?> getBinding(String colName) {
+		return m_sfType.getDescriptor(colName).getType().getBinding();
+	}
+
+	private FOption<String> toLiteral(Literal literal, Class<?> binding) {
+		Object value = literal.getValue();
+		if ( value == null ) {
+			return FOption.empty();
+		}
+		if ( !binding.isInstance(value) ) {
+			value = Converters.convert(value, binding);
+			if ( value == null ) {
+				return FOption.empty();
+			}
+		}
+
+		if ( value instanceof Number || value instanceof Boolean ) {
+			return FOption.of(value.toString());
+		}
+		else if ( value instanceof String || value instanceof Character ) {
+			return FOption.of(quote(value.toString()));
+		}
+		else {
+			return FOption.empty();
+		}
+	}
+
+	private static String quote(String str) {
+		return "'" + str.replace("\\", "\\\\").replace("'", "\\'") + "'";
+	}
+
+	private static String flip(String op) {
+		switch ( op ) {
+			case "<":
+				return ">";
+			case "<=":
+				return ">=";
+			case ">":
+				return "<";
+			case ">=":
+				return "<=";
+			default:
+				return op;
+		}
+	}
+}
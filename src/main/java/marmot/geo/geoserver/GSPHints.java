@@ -0,0 +1,24 @@
+package marmot.geo.geoserver;
+
+import org.geotools.util.factory.Hints;
+
+
+/**
+ * Marmot GeoServer 데이터 저장소가 인식하는 질의 hint들.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class GSPHints {
+	private GSPHints() {
+		throw new AssertionError("Should not be called: class=" + GSPHints.class);
+	}
+
+	/**
+	 * 점진적 렌더링을 위한 표본 질의 hint ({@link Integer}).
+	 * <p>
+	 * 지정된 경우, 질의 결과 대신 질의 영역을 격자로 나누어 격자 셀별로 고르게 추출한
+	 * 최대 주어진 수의 feature들을 반환한다. 질의 영역의 레코드 수가 주어진 수 이하로
+	 * 추정되는 경우는 무시된다. 전체 결과가 필요한 경우는 이 hint 없이 다시 질의하면 된다.
+	 */
+	public static final Hints.Key SAMPLE_COUNT = new Hints.Key(Integer.class);
+}
@@ -0,0 +1,142 @@
+package marmot.geo.geoserver;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 2의 거듭제곱 크기의 구간들로 값의 분포를 기록하는 lock-free 히스토그램.
+ * <p>
+ * 구간 {@code i}는 {@code [2^(i-1), 2^i)} 범위의 값을 집계하며 (구간 0은 값 0),
+ * 백분위 값은 해당 구간 내에서 선형 보간하여 추정한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class GSPHistogram {
+	private static final int NBUCKETS = 64;
+
+	private final AtomicLongArray m_buckets = new AtomicLongArray(NBUCKETS);
+	private final LongAdder m_count = new LongAdder();
+	private final LongAdder m_sum = new LongAdder();
+	private final LongAccumulator m_min = new LongAccumulator(Long::min, Long.MAX_VALUE);
+	private final LongAccumulator m_max = new LongAccumulator(Long::max, Long.MIN_VALUE);
+
+	GSPHistogram() { }
+
+	void record(long value) {
+		value = Math.max(value, 0);
+
+		m_buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(value), NBUCKETS-1));
+		m_count.increment();
+		m_sum.add(value);
+		m_min.accumulate(value);
+		m_max.accumulate(value);
+	}
+
+	void reset() {
+		for ( int i =0; i < NBUCKETS; ++i ) {
+			m_buckets.set(i, 0);
+		}
+		m_count.reset();
+		m_sum.reset();
+		m_min.reset();
+		m_max.reset();
+	}
+
+	Snapshot snapshot() {
+		long[] counts = new long[NBUCKETS];
+		long total = 0;
+		for ( int i =0; i < NBUCKETS; ++i ) {
+			counts[i] = m_buckets.get(i);
+			total += counts[i];
+		}
+		if ( total == 0 ) {
+			return new Snapshot(0, 0, 0, 0, 0, 0, 0);
+		}
+
+		long min = m_min.get();
+		long max = m_max.get();
+		double mean = (double)m_sum.sum() / total;
+		return new Snapshot(total, min, max, mean, percentile(counts, total, 0.5, min, max),
+							percentile(counts, total, 0.9, min, max),
+							percentile(counts, total, 0.99, min, max));
+	}
+
+	private static long percentile(long[] counts, long total, double q, long min, long max) {
+		long rank = (long)Math.ceil(total * q);
+		long accum = 0;
+		for ( int i =0; i < NBUCKETS; ++i ) {
+			if ( accum + counts[i] >= rank ) {
+				long lower = (i == 0) ? 0 : (1L << (i-1));
+				long upper = (i == 0) ? 0 : (i >= 63) ? Long.MAX_VALUE : (1L << i) - 1;
+				double ratio = (double)(rank - accum) / counts[i];
+				long value = lower + (long)((upper - lower) * ratio);
+
+				return Math.max(min, Math.min(value, max));
+			}
+			accum += counts[i];
+		}
+
+		return max;
+	}
+
+	/**
+	 * 히스토그램의 특정 시점의 요약 정보.
+	 */
+	public static final class Snapshot {
+		private final long m_count;
+		private final long m_min;
+		private final long m_max;
+		private final double m_mean;
+		private final long m_p50;
+		private final long m_p90;
+		private final long m_p99;
+
+		@ConstructorProperties({"count", "min", "max", "mean", "p50", "p90", "p99"})
+		public Snapshot(long count, long min, long max, double mean, long p50, long p90, long p99) {
+			m_count = count;
+			m_min = min;
+			m_max = max;
+			m_mean = mean;
+			m_p50 = p50;
+			m_p90 = p90;
+			m_p99 = p99;
+		}
+
+		public long getCount() {
+			return m_count;
+		}
+
+		public long getMin() {
+			return m_min;
+		}
+
+		public long getMax() {
+			return m_max;
+		}
+
+		public double getMean() {
+			return m_mean;
+		}
+
+		public long getP50() {
+			return m_p50;
+		}
+
+		public long getP90() {
+			return m_p90;
+		}
+
+		public long getP99() {
+			return m_p99;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, max=%d",
+								m_count, m_mean, m_p50, m_p90, m_p99, m_max);
+		}
+	}
+}
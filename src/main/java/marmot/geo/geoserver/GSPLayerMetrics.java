@@ -0,0 +1,134 @@
+package marmot.geo.geoserver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * GeoServer 레이어(데이터세트)별 질의 처리 통계.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPLayerMetrics implements GSPLayerMetricsMXBean {
+	private final String m_dsId;
+	private final LongAdder m_queryCount = new LongAdder();
+	private final GSPHistogram m_bboxArea = new GSPHistogram();
+	private final GSPHistogram m_records = new GSPHistogram();
+	private final GSPHistogram m_bytes = new GSPHistogram();
+	private final GSPHistogram m_planLatency = new GSPHistogram();
+	private final GSPHistogram m_firstFeature = new GSPHistogram();
+	private final GSPHistogram m_decode = new GSPHistogram();
+	private final LongAdder m_cacheHits = new LongAdder();
+	private final LongAdder m_cacheMisses = new LongAdder();
+
+	GSPLayerMetrics(String dsId) {
+		m_dsId = dsId;
+	}
+
+	void onQuery(double areaRatio) {
+		m_queryCount.increment();
+		m_bboxArea.record(Math.round(Math.min(areaRatio, 1) * 1_000_000));
+	}
+
+	void onPlanExecuted(long elapsedNanos) {
+		m_planLatency.record(toMicros(elapsedNanos));
+	}
+
+	void onTransferred(long bytes) {
+		m_bytes.record(bytes);
+	}
+
+	void onFirstFeature(long elapsedNanos) {
+		m_firstFeature.record(toMicros(elapsedNanos));
+	}
+
+	void onReaderClosed(long count, long decodeNanos) {
+		m_records.record(count);
+		m_decode.record(toMicros(decodeNanos));
+	}
+
+	void onCacheAccess(boolean hit) {
+		(hit ? m_cacheHits : m_cacheMisses).increment();
+	}
+
+	@Override
+	public String getDataSetId() {
+		return m_dsId;
+	}
+
+	@Override
+	public long getQueryCount() {
+		return m_queryCount.sum();
+	}
+
+	@Override
+	public GSPHistogram.Snapshot getBboxAreaPpm() {
+		return m_bboxArea.snapshot();
+	}
+
+	@Override
+	public GSPHistogram.Snapshot getRecordsReturned() {
+		return m_records.snapshot();
+	}
+
+	@Override
+	public GSPHistogram.Snapshot getBytesTransferred() {
+		return m_bytes.snapshot();
+	}
+
+	@Override
+	public GSPHistogram.Snapshot getPlanLatencyMicros() {
+		return m_planLatency.snapshot();
+	}
+
+	@Override
+	public GSPHistogram.Snapshot getFirstFeatureMicros() {
+		return m_firstFeature.snapshot();
+	}
+
+	@Override
+	public GSPHistogram.Snapshot getDecodeMicros() {
+		return m_decode.snapshot();
+	}
+
+	@Override
+	public long getCacheHitCount() {
+		return m_cacheHits.sum();
+	}
+
+	@Override
+	public long getCacheMissCount() {
+		return m_cacheMisses.sum();
+	}
+
+	@Override
+	public double getCacheHitRatio() {
+		long hits = m_cacheHits.sum();
+		long total = hits + m_cacheMisses.sum();
+		return (total > 0) ? (double)hits / total : 0;
+	}
+
+	@Override
+	public void reset() {
+		m_queryCount.reset();
+		m_bboxArea.reset();
+		m_records.reset();
+		m_bytes.reset();
+		m_planLatency.reset();
+		m_firstFeature.reset();
+		m_decode.reset();
+		m_cacheHits.reset();
+		m_cacheMisses.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[%s, nqueries=%d, hit_ratio=%.2f, latency={%s}]",
+							getClass().getSimpleName(), m_dsId, getQueryCount(),
+							getCacheHitRatio(), m_planLatency.snapshot());
+	}
+
+	private static long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+}
@@ -0,0 +1,64 @@
+package marmot.geo.geoserver;
+
+
+/**
+ * GeoServer 레이어(데이터세트)별 질의 처리 통계를 JMX로 제공하기 위한 인터페이스.
+ * <p>
+ * 시간 값은 모두 마이크로초 단위이다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public interface GSPLayerMetricsMXBean {
+	public String getDataSetId();
+
+	/**
+	 * feature reader 요청 수를 반환한다.
+	 */
+	public long getQueryCount();
+
+	/**
+	 * 질의 영역 면적의 분포를 반환한다.
+	 * 좌표계에 무관하도록 데이터세트 MBR 면적에 대한 백만분율(ppm)로 기록된다.
+	 */
+	public GSPHistogram.Snapshot getBboxAreaPpm();
+
+	/**
+	 * 질의별 반환된 feature 수의 분포를 반환한다.
+	 */
+	public GSPHistogram.Snapshot getRecordsReturned();
+
+	/**
+	 * 서버 질의별 전송 데이터 크기(바이트)의 분포를 반환한다.
+	 * 수신된 레코드의 메모리 크기로 추정된 값이다.
+	 */
+	public GSPHistogram.Snapshot getBytesTransferred();
+
+	/**
+	 * 서버 질의 요청 후 결과 레코드 세트를 얻기까지의 시간 분포를 반환한다.
+	 */
+	public GSPHistogram.Snapshot getPlanLatencyMicros();
+
+	/**
+	 * feature reader 요청 후 첫번째 feature가 반환되기까지의 시간 분포를 반환한다.
+	 */
+	public GSPHistogram.Snapshot getFirstFeatureMicros();
+
+	/**
+	 * 질의별 레코드를 feature로 변환하는데 소요된 시간 분포를 반환한다.
+	 * reader에서 소요된 시간 중 레코드 수신 대기 시간을 제외한 값이다.
+	 */
+	public GSPHistogram.Snapshot getDecodeMicros();
+
+	public long getCacheHitCount();
+	public long getCacheMissCount();
+
+	/**
+	 * 타일 캐쉬 적중률을 반환한다. 타일 캐쉬를 사용한 적이 없으면 0을 반환한다.
+	 */
+	public double getCacheHitRatio();
+
+	/**
+	 * 모든 통계를 초기화한다.
+	 */
+	public void reset();
+}
@@ -0,0 +1,273 @@
+package marmot.geo.geoserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+import utils.io.IOUtils;
+
+import marmot.remote.protobuf.PBMarmotClient;
+
+
+/**
+ * 프로세스 전체에서 공유되는 Marmot 서버 (host, port)별 클라이언트 풀.
+ * <p>
+ * 동일 서버를 사용하는 데이터 저장소들은 하나의 {@link PBMarmotClient}를 공유하며,
+ * 서버별로 동시에 수행되는 질의 수가 제한된다. 사용하는 데이터 저장소가 없는 클라이언트는
+ * 일정 시간이 지나면 닫히고, 오랫동안 사용되지 않은 클라이언트는 재사용 전에 연결 상태를
+ * 확인한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPMarmotClientPool {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPMarmotClientPool.class);
+	private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	private static final long HEALTH_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	public static final int DEFAULT_MAX_EXECUTIONS = 16;
+
+	private static final GSPMarmotClientPool s_pool = new GSPMarmotClientPool();
+
+	private final Map<String,Entry> m_entries = Maps.newHashMap();	// guarded by 'this'
+	private final ScheduledExecutorService m_evictor;
+
+	public static GSPMarmotClientPool get() {
+		return s_pool;
+	}
+
+	private GSPMarmotClientPool() {
+		m_evictor = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "gsp-client-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		m_evictor.scheduleWithFixedDelay(this::evictIdleClients, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * 주어진 서버에 대한 클라이언트를 대여한다.
+	 * 풀에 해당 서버의 클라이언트가 없거나 연결이 끊어진 경우는 새로 연결한다.
+	 * <p>
+	 * 연결 상태 확인과 서버 연결은 풀의 lock을 잡지 않은 상태에서 수행되므로,
+	 * 응답이 없는 서버가 다른 서버에 대한 대여를 막지 않는다.
+	 *
+	 * @param host			Marmot 서버 호스트
+	 * @param port			Marmot 서버 포트 번호
+	 * @param maxExecutions	서버별 최대 동시 질의 수. 서버에 대한 클라이언트가 처음 생성될 때만 사용되며,
+	 * 						0 이하인 경우는 지정하지 않은 것으로 간주한다.
+	 * @return	클라이언트 대여 객체.
+	 * @throws IOException	서버 연결에 실패한 경우.
+	 */
+	public Lease acquire(String host, int port, int maxExecutions) throws IOException {
+		String key = host + ":" + port;
+
+		Entry entry = pin(key, maxExecutions);
+		if ( entry != null ) {
+			if ( entry.checkHealth() ) {
+				return new Lease(entry);
+			}
+
+			s_logger.info("discard unhealthy marmot client: {}", key);
+			discard(entry);
+		}
+
+		PBMarmotClient client = PBMarmotClient.connect(host, port);
+		synchronized ( this ) {
+			// 연결하는 동안 다른 쓰레드가 먼저 연결한 경우는 해당 클라이언트를 사용한다.
+			entry = pin(key, maxExecutions);
+			if ( entry == null ) {
+				int nexecs = (maxExecutions > 0) ? maxExecutions : DEFAULT_MAX_EXECUTIONS;
+				entry = new Entry(key, client, nexecs);
+				m_entries.put(key, entry);
+				++entry.m_refCount;
+				s_logger.info("connected: marmot server={}, max_executions={}", key,
+								entry.m_maxExecutions);
+
+				return new Lease(entry);
+			}
+		}
+		IOUtils.closeQuietly(client);
+
+		return new Lease(entry);
+	}
+
+	public Lease acquire(String host, int port) throws IOException {
+		return acquire(host, port, 0);
+	}
+
+	private synchronized Entry pin(String key, int maxExecutions) {
+		Entry entry = m_entries.get(key);
+		if ( entry != null ) {
+			if ( maxExecutions > 0 && maxExecutions != entry.m_maxExecutions ) {
+				s_logger.warn("ignore max_executions={} for shared marmot client: server={}, "
+							+ "max_executions={}", maxExecutions, key, entry.m_maxExecutions);
+			}
+
+			++entry.m_refCount;
+			entry.m_lastAccess = System.currentTimeMillis();
+		}
+
+		return entry;
+	}
+
+	private synchronized void discard(Entry entry) {
+		if ( m_entries.get(entry.m_key) == entry ) {
+			m_entries.remove(entry.m_key);
+		}
+		release(entry);
+	}
+
+	private synchronized void release(Entry entry) {
+		--entry.m_refCount;
+		entry.m_lastAccess = System.currentTimeMillis();
+
+		// 풀에서 제거된 (연결 상태가 나쁜) 클라이언트는 마지막 사용자가 반환할 때 닫는다.
+		if ( entry.m_refCount == 0 && m_entries.get(entry.m_key) != entry ) {
+			IOUtils.closeQuietly(entry.m_client);
+		}
+	}
+
+	private synchronized void evictIdleClients() {
+		long now = System.currentTimeMillis();
+
+		Iterator<Entry> iter = m_entries.values().iterator();
+		while ( iter.hasNext() ) {
+			Entry entry = iter.next();
+			if ( entry.m_refCount == 0 && (now - entry.m_lastAccess) > IDLE_TIMEOUT_MILLIS ) {
+				iter.remove();
+				IOUtils.closeQuietly(entry.m_client);
+				s_logger.info("close idle marmot client: {}", entry.m_key);
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%s%s", getClass().getSimpleName(), m_entries.values());
+	}
+
+	private static class Entry {
+		private final String m_key;
+		private final PBMarmotClient m_client;
+		private final int m_maxExecutions;
+		private final Semaphore m_executions;
+		private int m_refCount = 0;									// guarded by pool
+		private long m_lastAccess = System.currentTimeMillis();		// guarded by pool
+		private volatile long m_lastChecked = System.currentTimeMillis();
+
+		Entry(String key, PBMarmotClient client, int maxExecutions) {
+			m_key = key;
+			m_client = client;
+			m_maxExecutions = maxExecutions;
+			m_executions = new Semaphore(maxExecutions, true);
+		}
+
+		private boolean checkHealth() {
+			long now = System.currentTimeMillis();
+			if ( (now - m_lastChecked) < HEALTH_CHECK_INTERVAL_MILLIS ) {
+				return true;
+			}
+
+			try {
+				m_client.getSubDirAll("/", false);
+				m_lastChecked = now;
+
+				return true;
+			}
+			catch ( Exception e ) {
+				return false;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s[refs=%d, executions=%d/%d]", m_key, m_refCount,
+								m_maxExecutions - m_executions.availablePermits(), m_maxExecutions);
+		}
+	}
+
+	/**
+	 * 풀에서 대여한 클라이언트. 대여 객체를 닫으면 클라이언트가 풀에 반환된다.
+	 */
+	public class Lease implements Closeable {
+		private final Entry m_entry;
+		private final AtomicBoolean m_closed = new AtomicBoolean(false);
+
+		private Lease(Entry entry) {
+			m_entry = entry;
+		}
+
+		public PBMarmotClient getClient() {
+			return m_entry.m_client;
+		}
+
+		/**
+		 * 서버에 질의를 수행하기 위한 허가를 얻는다.
+		 * 서버에서 동시에 수행 중인 질의 수가 최대값에 도달한 경우는 주어진 시간 동안 대기한다.
+		 *
+		 * @param timeoutMillis	최대 대기 시간 (밀리초)
+		 * @return	질의 수행 허가. 질의 수행이 끝나면 닫아야 한다.
+		 * @throws IOException	제한 시간 내에 허가를 얻지 못하거나, 대기 중 인터럽트된 경우.
+		 */
+		public Permit acquireExecution(long timeoutMillis) throws IOException {
+			Semaphore sema = m_entry.m_executions;
+			try {
+				if ( !sema.tryAcquire(Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS) ) {
+					s_logger.warn("no execution slot available: server={}, waited={}ms",
+									m_entry.m_key, timeoutMillis);
+					throw new IOException(String.format("Marmot server busy: server=%s, waited=%dms",
+														m_entry.m_key, timeoutMillis));
+				}
+				return Permit.of(sema::release);
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting an execution slot: "
+												+ m_entry.m_key);
+			}
+		}
+
+		@Override
+		public void close() {
+			if ( m_closed.compareAndSet(false, true) ) {
+				release(m_entry);
+			}
+		}
+	}
+
+	/**
+	 * 질의 수행 허가. 여러 번 닫더라도 한 번만 반환된다.
+	 */
+	public static class Permit implements Closeable {
+		private final Runnable m_onRelease;
+		private final AtomicBoolean m_closed = new AtomicBoolean(false);
+
+		static final Permit NONE = new Permit(() -> { });
+
+		private Permit(Runnable onRelease) {
+			m_onRelease = onRelease;
+		}
+
+		static Permit of(Runnable onRelease) {
+			return new Permit(onRelease);
+		}
+
+		@Override
+		public void close() {
+			if ( m_closed.compareAndSet(false, true) ) {
+				m_onRelease.run();
+			}
+		}
+	}
+}
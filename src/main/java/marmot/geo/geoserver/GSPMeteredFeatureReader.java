@@ -0,0 +1,87 @@
+package marmot.geo.geoserver;
+
+import java.io.IOException;
+
+import org.geotools.data.FeatureReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+
+/**
+ * 질의 결과 feature 수, 첫번째 feature까지의 시간, feature 변환 시간을 측정하는 reader.
+ * <p>
+ * 변환 시간은 reader에서 소요된 시간 중 원본 레코드 세트의 수신 대기 시간을 제외한 값이다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPMeteredFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+	private final FeatureReader<SimpleFeatureType, SimpleFeature> m_reader;
+	private final GSPLayerMetrics m_metrics;
+	private final long m_startedNanos;
+	private final GSPMeteredRecordSet m_rset;
+
+	private long m_readNanos = 0;
+	private long m_count = 0;
+	private boolean m_closed = false;
+
+	/**
+	 * 통계 측정 reader를 생성한다.
+	 *
+	 * @param reader		측정 대상 reader
+	 * @param metrics		측정 결과를 기록할 통계 객체
+	 * @param startedNanos	질의 요청 시각 ({@link System#nanoTime()})
+	 * @param rset			reader가 사용하는 원본 레코드 세트. 없는 경우는 {@code null}.
+	 */
+	GSPMeteredFeatureReader(FeatureReader<SimpleFeatureType, SimpleFeature> reader,
+							GSPLayerMetrics metrics, long startedNanos, GSPMeteredRecordSet rset) {
+		m_reader = reader;
+		m_metrics = metrics;
+		m_startedNanos = startedNanos;
+		m_rset = rset;
+	}
+
+	@Override
+	public SimpleFeatureType getFeatureType() {
+		return m_reader.getFeatureType();
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		long started = System.nanoTime();
+		try {
+			return m_reader.hasNext();
+		}
+		finally {
+			m_readNanos += System.nanoTime() - started;
+		}
+	}
+
+	@Override
+	public SimpleFeature next() throws IOException {
+		long started = System.nanoTime();
+		SimpleFeature feature = m_reader.next();
+		long now = System.nanoTime();
+		m_readNanos += now - started;
+
+		if ( m_count++ == 0 ) {
+			m_metrics.onFirstFeature(now - m_startedNanos);
+		}
+		return feature;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if ( m_closed ) {
+			return;
+		}
+		m_closed = true;
+
+		try {
+			m_reader.close();
+		}
+		finally {
+			long fetchNanos = (m_rset != null) ? m_rset.getElapsedNanos() : 0;
+			m_metrics.onReaderClosed(m_count, Math.max(m_readNanos - fetchNanos, 0));
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package marmot.geo.geoserver;
+
+import java.util.function.Consumer;
+
+import marmot.Record;
+import marmot.RecordSchema;
+import marmot.RecordSet;
+import marmot.rset.AbstractRecordSet;
+
+
+/**
+ * 레코드 수신에 소요된 시간과 수신된 레코드 크기를 측정하는 레코드 세트.
+ * <p>
+ * 레코드 크기는 {@link GSPTileCache#estimateSize(Record, int)}로 추정한 값이며,
+ * {@code measureBytes}가 {@code false}인 경우는 측정하지 않는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPMeteredRecordSet extends AbstractRecordSet {
+	private final RecordSet m_src;
+	private final int m_ncols;
+	private final boolean m_measureBytes;
+	private final Consumer<GSPMeteredRecordSet> m_onClose;
+
+	private long m_nanos = 0;
+	private long m_count = 0;
+	private long m_bytes = 0;
+
+	GSPMeteredRecordSet(RecordSet src, boolean measureBytes, Consumer<GSPMeteredRecordSet> onClose) {
+		m_src = src;
+		m_ncols = src.getRecordSchema().getColumnCount();
+		m_measureBytes = measureBytes;
+		m_onClose = onClose;
+	}
+
+	/**
+	 * 레코드 수신({@link #next(Record)})에 소요된 누적 시간을 반환한다.
+	 */
+	long getElapsedNanos() {
+		return m_nanos;
+	}
+
+	long getCount() {
+		return m_count;
+	}
+
+	long getBytes() {
+		return m_bytes;
+	}
+
+	@Override
+	protected void closeInGuard() {
+		try {
+			m_src.closeQuietly();
+		}
+		finally {
+			m_onClose.accept(this);
+		}
+	}
+
+	@Override
+	public RecordSchema getRecordSchema() {
+		return m_src.getRecordSchema();
+	}
+
+	@Override
+	public boolean next(Record output) {
+		long started = System.nanoTime();
+		try {
+			boolean found = m_src.next(output);
+			if ( found ) {
+				++m_count;
+				if ( m_measureBytes ) {
+					m_bytes += GSPTileCache.estimateSize(output, m_ncols);
+				}
+			}
+			return found;
+		}
+		finally {
+			m_nanos += System.nanoTime() - started;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package marmot.geo.geoserver;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+
+/**
+ * 데이터 저장소에 속한 레이어별 통계 객체들을 관리하고 JMX에 등록한다.
+ * <p>
+ * 통계 객체는 {@code marmot.geoserver:type=LayerMetrics,store=<번호>,dataset=<식별자>}
+ * 이름으로 platform MBean 서버에 등록된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPMetrics {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPMetrics.class);
+	private static final String DOMAIN = "marmot.geoserver";
+	private static final AtomicInteger s_seqno = new AtomicInteger(0);
+
+	private final int m_storeNo = s_seqno.incrementAndGet();
+	private final ConcurrentMap<String,GSPLayerMetrics> m_layers = Maps.newConcurrentMap();
+
+	/**
+	 * 주어진 데이터세트의 통계 객체를 반환한다. 없는 경우는 새로 생성하여 등록한다.
+	 *
+	 * @param dsId	데이터세트 식별자
+	 * @return	통계 객체
+	 */
+	GSPLayerMetrics get(String dsId) {
+		return m_layers.computeIfAbsent(dsId, id -> {
+			GSPLayerMetrics metrics = new GSPLayerMetrics(id);
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				server.registerMBean(metrics, toObjectName(id));
+			}
+			catch ( JMException e ) {
+				// 등록에 실패하더라도 통계 수집은 계속한다.
+				s_logger.warn("fails to register metrics MBean: ds={}, cause={}", id, e.toString());
+			}
+			return metrics;
+		});
+	}
+
+	/**
+	 * 등록된 모든 통계 객체를 JMX에서 해제한다.
+	 */
+	void close() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for ( String dsId: m_layers.keySet() ) {
+			try {
+				ObjectName name = toObjectName(dsId);
+				if ( server.isRegistered(name) ) {
+					server.unregisterMBean(name);
+				}
+			}
+			catch ( JMException ignored ) { }
+		}
+		m_layers.clear();
+	}
+
+	private ObjectName toObjectName(String dsId) throws JMException {
+		return new ObjectName(String.format("%s:type=LayerMetrics,store=%d,dataset=%s",
+											DOMAIN, m_storeNo, ObjectName.quote(dsId)));
+	}
+}
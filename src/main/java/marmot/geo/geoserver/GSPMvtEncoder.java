@@ -0,0 +1,455 @@
+package marmot.geo.geoserver;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Lineal;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.Puntal;
+
+import com.google.common.collect.Maps;
+
+
+/**
+ * 하나의 레이어로 구성된 Mapbox Vector Tile (MVT 2.1) 인코더.
+ * <p>
+ * 공간 객체는 타일 영역에 대해 이미 잘린 상태로 주어져야 하며, 인코더는 좌표를 타일 좌표계로
+ * 변환·정수화하면서 바로 MVT 명령어 열로 인코딩한다. 정수화 후 중복된 좌표는 제거되고,
+ * 면적이 없어진 링은 생략된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPMvtEncoder {
+	private static final int CMD_MOVE_TO = 1;
+	private static final int CMD_LINE_TO = 2;
+	private static final int CMD_CLOSE_PATH = 7;
+
+	private static final int GEOM_POINT = 1;
+	private static final int GEOM_LINESTRING = 2;
+	private static final int GEOM_POLYGON = 3;
+
+	private final String m_layerName;
+	private final Envelope m_tileBounds;
+	private final int m_extent;
+	private final double m_scaleX;
+	private final double m_scaleY;
+
+	private final ProtoWriter m_features = new ProtoWriter();
+	private final Map<String,Integer> m_keys = Maps.newLinkedHashMap();
+	private final Map<Object,Integer> m_values = Maps.newLinkedHashMap();
+	private int m_featureCount = 0;
+
+	// 인코딩 중 재사용되는 버퍼
+	private final IntList m_geomCmds = new IntList();
+	private final IntList m_tags = new IntList();
+	private final IntList m_ringX = new IntList();
+	private final IntList m_ringY = new IntList();
+	private int m_cursorX;
+	private int m_cursorY;
+
+	GSPMvtEncoder(String layerName, Envelope tileBounds, int extent) {
+		m_layerName = layerName;
+		m_tileBounds = tileBounds;
+		m_extent = extent;
+		m_scaleX = extent / tileBounds.getWidth();
+		m_scaleY = extent / tileBounds.getHeight();
+	}
+
+	int getFeatureCount() {
+		return m_featureCount;
+	}
+
+	/**
+	 * 주어진 feature를 레이어에 추가한다.
+	 *
+	 * @param id		feature 식별자
+	 * @param geom		타일 영역에 대해 잘린 공간 객체
+	 * @param names		속성 이름 리스트
+	 * @param values	속성 값 배열. {@code null} 값은 생략된다.
+	 * @return	추가 여부. 정수화 후 빈 공간 객체가 된 경우는 추가되지 않는다.
+	 */
+	boolean addFeature(long id, Geometry geom, List<String> names, Object[] values) {
+		if ( geom == null || geom.isEmpty() ) {
+			return false;
+		}
+
+		m_geomCmds.clear();
+		m_cursorX = 0;
+		m_cursorY = 0;
+
+		int geomType;
+		if ( geom instanceof Puntal ) {
+			geomType = GEOM_POINT;
+			encodePoints(geom);
+		}
+		else if ( geom instanceof Lineal ) {
+			geomType = GEOM_LINESTRING;
+			for ( int i =0; i < geom.getNumGeometries(); ++i ) {
+				encodeLine((LineString)geom.getGeometryN(i));
+			}
+		}
+		else if ( geom instanceof Polygonal ) {
+			geomType = GEOM_POLYGON;
+			for ( int i =0; i < geom.getNumGeometries(); ++i ) {
+				encodePolygon((Polygon)geom.getGeometryN(i));
+			}
+		}
+		else {
+			// GeometryCollection은 MVT에서 지원되지 않는다.
+			return false;
+		}
+		if ( m_geomCmds.size() == 0 ) {
+			return false;
+		}
+
+		m_tags.clear();
+		for ( int i =0; i < names.size(); ++i ) {
+			Object value = toMvtValue(values[i]);
+			if ( value != null ) {
+				m_tags.add(m_keys.computeIfAbsent(names.get(i), k -> m_keys.size()));
+				m_tags.add(m_values.computeIfAbsent(value, k -> m_values.size()));
+			}
+		}
+
+		ProtoWriter feature = new ProtoWriter();
+		if ( id >= 0 ) {
+			feature.writeVarintField(1, id);
+		}
+		feature.writePackedField(2, m_tags);
+		feature.writeVarintField(3, geomType);
+		feature.writePackedField(4, m_geomCmds);
+
+		m_features.writeBytesField(2, feature.toByteArray());
+		++m_featureCount;
+
+		return true;
+	}
+
+	/**
+	 * 지금까지 추가된 feature들로 구성된 타일을 인코딩한다.
+	 *
+	 * @return	MVT 바이트 배열
+	 */
+	byte[] encode() {
+		ProtoWriter layer = new ProtoWriter();
+		layer.writeVarintField(15, 2);
+		layer.writeStringField(1, m_layerName);
+		layer.writeRaw(m_features.toByteArray());
+		for ( String key: m_keys.keySet() ) {
+			layer.writeStringField(3, key);
+		}
+		for ( Object value: m_values.keySet() ) {
+			layer.writeBytesField(4, encodeValue(value));
+		}
+		layer.writeVarintField(5, m_extent);
+
+		ProtoWriter tile = new ProtoWriter();
+		tile.writeBytesField(3, layer.toByteArray());
+
+		return tile.toByteArray();
+	}
+
+	private void encodePoints(Geometry geom) {
+		int count = 0;
+		int cmdIdx = m_geomCmds.size();
+		m_geomCmds.add(0);	// 점의 개수가 정해진 후 설정한다.
+		for ( int i =0; i < geom.getNumGeometries(); ++i ) {
+			Coordinate coord = ((Point)geom.getGeometryN(i)).getCoordinate();
+			int x = toTileX(coord.x);
+			int y = toTileY(coord.y);
+			m_geomCmds.add(zigzag(x - m_cursorX));
+			m_geomCmds.add(zigzag(y - m_cursorY));
+			m_cursorX = x;
+			m_cursorY = y;
+			++count;
+		}
+		m_geomCmds.set(cmdIdx, command(CMD_MOVE_TO, count));
+	}
+
+	private void encodeLine(LineString line) {
+		if ( !quantize(line.getCoordinates(), false) || m_ringX.size() < 2 ) {
+			return;
+		}
+		writePath(false);
+	}
+
+	private void encodePolygon(Polygon poly) {
+		// 외곽 링은 타일 좌표계(y축이 아래 방향)에서 양의 면적(시계 방향)을 가져야 한다.
+		if ( !quantize(poly.getExteriorRing().getCoordinates(), true) ) {
+			return;
+		}
+		long area = signedArea();
+		if ( area == 0 ) {
+			return;
+		}
+		if ( area < 0 ) {
+			reverseRing();
+		}
+		writePath(true);
+
+		for ( int i =0; i < poly.getNumInteriorRing(); ++i ) {
+			if ( quantize(poly.getInteriorRingN(i).getCoordinates(), true) ) {
+				long holeArea = signedArea();
+				if ( holeArea != 0 ) {
+					if ( holeArea > 0 ) {
+						reverseRing();
+					}
+					writePath(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 주어진 좌표들을 타일 좌표로 변환하여 링 버퍼에 기록한다.
+	 * 연속으로 중복된 좌표와, 닫힌 링의 마지막 좌표는 생략된다.
+	 */
+	private boolean quantize(Coordinate[] coords, boolean ring) {
+		m_ringX.clear();
+		m_ringY.clear();
+
+		int last = ring ? coords.length - 1 : coords.length;
+		for ( int i =0; i < last; ++i ) {
+			int x = toTileX(coords[i].x);
+			int y = toTileY(coords[i].y);
+			int n = m_ringX.size();
+			if ( n > 0 && m_ringX.get(n-1) == x && m_ringY.get(n-1) == y ) {
+				continue;
+			}
+			m_ringX.add(x);
+			m_ringY.add(y);
+		}
+
+		return ring ? m_ringX.size() >= 3 : m_ringX.size() >= 2;
+	}
+
+	private void writePath(boolean close) {
+		int npoints = m_ringX.size();
+
+		m_geomCmds.add(command(CMD_MOVE_TO, 1));
+		m_geomCmds.add(zigzag(m_ringX.get(0) - m_cursorX));
+		m_geomCmds.add(zigzag(m_ringY.get(0) - m_cursorY));
+		m_cursorX = m_ringX.get(0);
+		m_cursorY = m_ringY.get(0);
+
+		m_geomCmds.add(command(CMD_LINE_TO, npoints - 1));
+		for ( int i =1; i < npoints; ++i ) {
+			m_geomCmds.add(zigzag(m_ringX.get(i) - m_cursorX));
+			m_geomCmds.add(zigzag(m_ringY.get(i) - m_cursorY));
+			m_cursorX = m_ringX.get(i);
+			m_cursorY = m_ringY.get(i);
+		}
+
+		if ( close ) {
+			m_geomCmds.add(command(CMD_CLOSE_PATH, 1));
+		}
+	}
+
+	private long signedArea() {
+		long area = 0;
+		int n = m_ringX.size();
+		for ( int i =0; i < n; ++i ) {
+			int j = (i + 1) % n;
+			area += (long)m_ringX.get(i) * m_ringY.get(j) - (long)m_ringX.get(j) * m_ringY.get(i);
+		}
+
+		return area;
+	}
+
+	private void reverseRing() {
+		m_ringX.reverse();
+		m_ringY.reverse();
+	}
+
+	private int toTileX(double x) {
+		return (int)Math.round((x - m_tileBounds.getMinX()) * m_scaleX);
+	}
+
+	private int toTileY(double y) {
+		return (int)Math.round((m_tileBounds.getMaxY() - y) * m_scaleY);
+	}
+
+	private static int command(int id, int count) {
+		return (id & 0x7) | (count << 3);
+	}
+
+	private static int zigzag(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+
+	private static Object toMvtValue(Object value) {
+		if ( value == null ) {
+			return null;
+		}
+		else if ( value instanceof String || value instanceof Boolean || value instanceof Double
+				|| value instanceof Float || value instanceof Long ) {
+			return value;
+		}
+		else if ( value instanceof Integer || value instanceof Short || value instanceof Byte ) {
+			return ((Number)value).longValue();
+		}
+		else if ( value instanceof Geometry ) {
+			return null;
+		}
+		else {
+			return value.toString();
+		}
+	}
+
+	private static byte[] encodeValue(Object value) {
+		ProtoWriter writer = new ProtoWriter();
+		if ( value instanceof String ) {
+			writer.writeStringField(1, (String)value);
+		}
+		else if ( value instanceof Float ) {
+			writer.writeTag(2, ProtoWriter.WIRE_FIXED32);
+			writer.writeFixed32(Float.floatToIntBits((Float)value));
+		}
+		else if ( value instanceof Double ) {
+			writer.writeTag(3, ProtoWriter.WIRE_FIXED64);
+			writer.writeFixed64(Double.doubleToLongBits((Double)value));
+		}
+		else if ( value instanceof Long ) {
+			long v = (Long)value;
+			writer.writeVarintField(6, (v << 1) ^ (v >> 63));	// sint64
+		}
+		else if ( value instanceof Boolean ) {
+			writer.writeVarintField(7, ((Boolean)value) ? 1 : 0);
+		}
+
+		return writer.toByteArray();
+	}
+
+	/**
+	 * MVT 인코딩에 필요한 최소한의 protobuf 출력 기능.
+	 */
+	private static class ProtoWriter {
+		static final int WIRE_VARINT = 0;
+		static final int WIRE_FIXED64 = 1;
+		static final int WIRE_LENGTH_DELIMITED = 2;
+		static final int WIRE_FIXED32 = 5;
+
+		private final ByteArrayOutputStream m_out = new ByteArrayOutputStream(256);
+
+		void writeTag(int field, int wireType) {
+			writeVarint((field << 3) | wireType);
+		}
+
+		void writeVarintField(int field, long value) {
+			writeTag(field, WIRE_VARINT);
+			writeVarint(value);
+		}
+
+		void writeStringField(int field, String value) {
+			writeBytesField(field, value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		void writeBytesField(int field, byte[] bytes) {
+			writeTag(field, WIRE_LENGTH_DELIMITED);
+			writeVarint(bytes.length);
+			m_out.write(bytes, 0, bytes.length);
+		}
+
+		void writePackedField(int field, IntList values) {
+			if ( values.size() == 0 ) {
+				return;
+			}
+
+			int nbytes = 0;
+			for ( int i =0; i < values.size(); ++i ) {
+				nbytes += varintSize(values.get(i) & 0xFFFFFFFFL);
+			}
+			writeTag(field, WIRE_LENGTH_DELIMITED);
+			writeVarint(nbytes);
+			for ( int i =0; i < values.size(); ++i ) {
+				writeVarint(values.get(i) & 0xFFFFFFFFL);
+			}
+		}
+
+		void writeRaw(byte[] bytes) {
+			m_out.write(bytes, 0, bytes.length);
+		}
+
+		void writeFixed32(int value) {
+			for ( int i =0; i < 4; ++i ) {
+				m_out.write((value >>> (8*i)) & 0xFF);
+			}
+		}
+
+		void writeFixed64(long value) {
+			for ( int i =0; i < 8; ++i ) {
+				m_out.write((int)(value >>> (8*i)) & 0xFF);
+			}
+		}
+
+		void writeVarint(long value) {
+			while ( (value & ~0x7FL) != 0 ) {
+				m_out.write((int)((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			m_out.write((int)value);
+		}
+
+		private static int varintSize(long value) {
+			int size = 1;
+			while ( (value & ~0x7FL) != 0 ) {
+				value >>>= 7;
+				++size;
+			}
+			return size;
+		}
+
+		byte[] toByteArray() {
+			return m_out.toByteArray();
+		}
+	}
+
+	/**
+	 * boxing 없이 정수들을 저장하는 가변 크기 배열.
+	 */
+	private static class IntList {
+		private int[] m_values = new int[64];
+		private int m_size = 0;
+
+		void add(int v) {
+			if ( m_size == m_values.length ) {
+				int[] expanded = new int[m_values.length * 2];
+				System.arraycopy(m_values, 0, expanded, 0, m_size);
+				m_values = expanded;
+			}
+			m_values[m_size++] = v;
+		}
+
+		int get(int idx) {
+			return m_values[idx];
+		}
+
+		void set(int idx, int v) {
+			m_values[idx] = v;
+		}
+
+		int size() {
+			return m_size;
+		}
+
+		void clear() {
+			m_size = 0;
+		}
+
+		void reverse() {
+			for ( int i =0, j = m_size-1; i < j; ++i, --j ) {
+				int tmp = m_values[i];
+				m_values[i] = m_values[j];
+				m_values[j] = tmp;
+			}
+		}
+	}
+}
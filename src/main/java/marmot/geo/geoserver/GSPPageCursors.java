@@ -0,0 +1,181 @@
+package marmot.geo.geoserver;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+
+import utils.func.FOption;
+import utils.io.IOUtils;
+
+
+/**
+ * WFS 페이지 요청(startIndex/count) 사이에서 열린 feature reader를 유지하여,
+ * 동일 질의에 대한 연속된 페이지 요청이 처음부터 다시 검색하지 않도록 한다.
+ * <p>
+ * 유지된 커서는 일정 시간 사용되지 않거나, 최대 커서 수를 넘는 경우 닫힌다.
+ * 사용되지 않은 커서의 정리는 별도의 쓰레드에서 주기적으로 수행되므로, 페이지 요청이
+ * 더 이상 없더라도 서버 레코드 세트가 계속 열려 있지 않는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPPageCursors {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPPageCursors.class);
+	private static final int MAX_CURSORS = 32;
+	private static final long IDLE_TIMEOUT_SECONDS = 60;
+	private static final long CLEANUP_INTERVAL_SECONDS = 10;
+	private static final ScheduledExecutorService s_cleaner = createCleaner();
+
+	private final Cache<String,Cursor> m_cursors;
+	private final ScheduledFuture<?> m_cleanup;
+
+	static class Cursor {
+		private final FeatureReader<SimpleFeatureType, SimpleFeature> m_reader;
+		private final List<GSPPermitRecordSet> m_permitteds;
+		private final long m_position;
+
+		Cursor(FeatureReader<SimpleFeatureType, SimpleFeature> reader,
+				List<GSPPermitRecordSet> permitteds, long position) {
+			m_reader = reader;
+			m_permitteds = permitteds;
+			m_position = position;
+		}
+
+		FeatureReader<SimpleFeatureType, SimpleFeature> getReader() {
+			return m_reader;
+		}
+
+		List<GSPPermitRecordSet> getPermitteds() {
+			return m_permitteds;
+		}
+	}
+
+	GSPPageCursors() {
+		m_cursors = CacheBuilder.newBuilder()
+								.maximumSize(MAX_CURSORS)
+								.expireAfterAccess(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+								.removalListener(this::onRemoval)
+								.build();
+		
+		// Guava 캐쉬는 캐쉬가 사용될 때만 만료된 항목을 제거하기 때문에 주기적으로 정리한다.
+		m_cleanup = s_cleaner.scheduleWithFixedDelay(m_cursors::cleanUp, CLEANUP_INTERVAL_SECONDS,
+													CLEANUP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * 페이지 정보를 제외한 질의 내용으로 구성된 커서 키를 생성한다.
+	 *
+	 * @param dsId	대상 데이터세트 식별자
+	 * @param query	질의 객체
+	 * @return	커서 키
+	 */
+	static String toCursorKey(String dsId, Query query) {
+		return String.format("%s|%s|%s|%s|%s|%s", dsId, query.getFilter(),
+							Arrays.toString(query.getPropertyNames()),
+							Arrays.toString(query.getSortBy()),
+							query.getCoordinateSystemReproject(),
+							query.getHints().get(GSPHints.SAMPLE_COUNT));
+	}
+
+	/**
+	 * 주어진 키와 위치에 해당하는 커서가 있으면 이를 반환한다.
+	 * 반환된 커서는 커서 집합에서 제거되며, 커서가 유지되는 동안 반환했던 질의 수행 허가를
+	 * 다시 얻는다.
+	 *
+	 * @param key		커서 키
+	 * @param position	요청 시작 위치
+	 * @return	커서
+	 * @throws IOException	제한 시간 내에 질의 수행 허가를 얻지 못한 경우.
+	 */
+	FOption<Cursor> take(String key, long position)
+		throws IOException {
+		Cursor cursor = m_cursors.asMap().get(key);
+		if ( cursor != null && cursor.m_position == position
+			&& m_cursors.asMap().remove(key, cursor) ) {
+			s_logger.debug("resume paging cursor: key={}, position={}", key, position);
+			try {
+				for ( GSPPermitRecordSet permitted: cursor.m_permitteds ) {
+					permitted.resume();
+				}
+			}
+			catch ( IOException e ) {
+				IOUtils.closeQuietly(cursor.m_reader);
+				throw e;
+			}
+			return FOption.of(cursor);
+		}
+
+		return FOption.empty();
+	}
+
+	/**
+	 * 주어진 reader를 이용하여 한 페이지를 읽는 reader를 생성한다.
+	 * 생성된 reader가 닫힐 때, 원본 reader가 아직 끝나지 않았으면 다음 페이지 요청을 위해
+	 * 커서로 등록된다. 커서로 등록되는 동안에는 원본 reader가 사용하는 레코드 세트들의
+	 * 질의 수행 허가를 반환하여, 유지 중인 커서가 다른 질의의 수행을 막지 않도록 한다.
+	 *
+	 * @param key			커서 키
+	 * @param src			원본 reader
+	 * @param permitteds	원본 reader가 사용하는 질의 수행 허가 레코드 세트들
+	 * @param startPos		원본 reader의 현재 위치
+	 * @param skip			건너뛸 feature의 수
+	 * @param limit			최대 feature 수
+	 * @return	페이지 reader
+	 */
+	GSPPagingFeatureReader page(String key, FeatureReader<SimpleFeatureType, SimpleFeature> src,
+								List<GSPPermitRecordSet> permitteds, long startPos, int skip,
+								int limit) {
+		return new GSPPagingFeatureReader(src, startPos, skip, limit, reader -> {
+			if ( reader.isExhausted() ) {
+				IOUtils.closeQuietly(reader.getSource());
+			}
+			else {
+				// 동일 키로 이미 등록된 커서는 removal listener에서 닫힌다.
+				permitteds.forEach(GSPPermitRecordSet::suspend);
+				m_cursors.put(key, new Cursor(reader.getSource(), permitteds,
+												reader.getSourcePosition()));
+			}
+		});
+	}
+
+	/**
+	 * 유지 중인 모든 커서를 닫고, 주기적인 정리 작업을 중지한다.
+	 */
+	void close() {
+		m_cleanup.cancel(false);
+		
+		m_cursors.asMap().values().forEach(cursor -> IOUtils.closeQuietly(cursor.m_reader));
+		m_cursors.invalidateAll();
+	}
+
+	private static ScheduledExecutorService createCleaner() {
+		return Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "gsp-cursor-cleaner");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private void onRemoval(RemovalNotification<String,Cursor> noti) {
+		// 명시적으로 제거된 커서는 take()로 재사용되거나 close()에서 닫힌다.
+		if ( noti.getCause() != RemovalCause.EXPLICIT ) {
+			s_logger.debug("close paging cursor: key={}, cause={}", noti.getKey(), noti.getCause());
+			IOUtils.closeQuietly(noti.getValue().m_reader);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package marmot.geo.geoserver;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import org.geotools.data.FeatureReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+
+/**
+ * 주어진 feature reader에서 앞쪽 {@code skip}개의 feature를 건너뛴 후,
+ * 최대 {@code limit}개의 feature만 반환하는 reader.
+ * <p>
+ * Reader가 닫힐 때 원본 reader를 닫는 대신 주어진 close 핸들러를 호출하여,
+ * 다음 페이지 요청시 원본 reader를 계속 사용할 수 있도록 한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPPagingFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+	private final FeatureReader<SimpleFeatureType, SimpleFeature> m_src;
+	private final long m_startPos;
+	private final int m_skip;
+	private final int m_limit;
+	private final Consumer<GSPPagingFeatureReader> m_onClose;
+
+	private int m_skipped = 0;
+	private int m_returned = 0;
+	private boolean m_exhausted = false;
+
+	GSPPagingFeatureReader(FeatureReader<SimpleFeatureType, SimpleFeature> src, long startPos,
+							int skip, int limit, Consumer<GSPPagingFeatureReader> onClose) {
+		m_src = src;
+		m_startPos = startPos;
+		m_skip = skip;
+		m_limit = limit;
+		m_onClose = onClose;
+	}
+
+	FeatureReader<SimpleFeatureType, SimpleFeature> getSource() {
+		return m_src;
+	}
+
+	/**
+	 * 원본 reader에서 다음에 읽혀질 feature의 위치를 반환한다.
+	 *
+	 * @return	feature 위치.
+	 */
+	long getSourcePosition() {
+		return m_startPos + m_skipped + m_returned;
+	}
+
+	boolean isExhausted() {
+		return m_exhausted;
+	}
+
+	@Override
+	public SimpleFeatureType getFeatureType() {
+		return m_src.getFeatureType();
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		if ( m_returned >= m_limit || m_exhausted ) {
+			return false;
+		}
+
+		while ( m_skipped < m_skip ) {
+			if ( !m_src.hasNext() ) {
+				m_exhausted = true;
+				return false;
+			}
+			m_src.next();
+			++m_skipped;
+		}
+
+		if ( !m_src.hasNext() ) {
+			m_exhausted = true;
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public SimpleFeature next() throws IOException {
+		if ( !hasNext() ) {
+			throw new NoSuchElementException();
+		}
+
+		SimpleFeature feature = m_src.next();
+		++m_returned;
+
+		return feature;
+	}
+
+	@Override
+	public void close() throws IOException {
+		m_onClose.accept(this);
+	}
+}
@@ -0,0 +1,244 @@
+package marmot.geo.geoserver;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import utils.Throwables;
+import utils.func.FOption;
+import utils.stream.FStream;
+
+import marmot.Column;
+import marmot.Record;
+import marmot.RecordSchema;
+import marmot.RecordSet;
+import marmot.geo.geoserver.GSPTileCache.TileDeduplicator;
+import marmot.geo.geoserver.GSPTileCache.TileGrid;
+import marmot.geo.geoserver.GSPTileCache.TileLoader;
+import marmot.rset.AbstractRecordSet;
+
+
+/**
+ * 큰 질의 영역을 공간 클러스터 크기에 맞춘 4분할 타일 단위의 부분 영역으로 나누어
+ * 동시에 검색하고, 그 결과들을 하나로 합친 레코드 세트.
+ * <p>
+ * 여러 부분 영역에 걸친 레코드는 {@link TileDeduplicator}에 따라 소유 부분 영역에서만 반환된다.
+ * 레코드들의 순서는 보장되지 않는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPParallelRecordSet extends AbstractRecordSet {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPParallelRecordSet.class);
+	private static final int QUEUE_LENGTH = 4096;
+	private static final int MAX_SPLITS = 64;
+	private static final long SPLIT_THRESHOLD = 100_000;
+	private static final Object END = new Object();
+
+	private final RecordSchema m_schema;
+	private final int m_ncols;
+	private final int m_geomColIdx;
+	private final BlockingQueue<Object> m_queue = new ArrayBlockingQueue<>(QUEUE_LENGTH);
+	private final List<Future<?>> m_futures = Lists.newArrayList();
+	private final RecordSet m_first;
+	private final TileDeduplicator m_dedup;
+	private volatile boolean m_closed = false;
+	private int m_remains;
+
+	/**
+	 * 주어진 질의 영역에 대해 부분 영역 검색을 시작한다.
+	 *
+	 * @param executor	부분 영역 검색에 사용할 쓰레드 풀
+	 * @param grid		부분 영역 타일 격자
+	 * @param range		전체 질의 영역
+	 * @param geomCol	공간 컬럼 이름
+	 * @param loader	부분 영역 검색 함수. 반환된 레코드 세트는 해당 부분 영역의 검색이 끝나는
+	 * 					즉시 닫히므로, 질의 수행 허가는 부분 영역 질의별로 얻는다.
+	 */
+	GSPParallelRecordSet(ExecutorService executor, TileGrid grid, Envelope range, String geomCol,
+						TileLoader loader) throws Exception {
+		List<int[]> tiles = Lists.newArrayList();
+		for ( int y = grid.m_minY; y <= grid.m_maxY; ++y ) {
+			for ( int x = grid.m_minX; x <= grid.m_maxX; ++x ) {
+				tiles.add(new int[]{x, y});
+			}
+		}
+
+		// 레코드 스키마를 얻기 위해 첫번째 부분 영역은 호출 쓰레드에서 질의를 시작한다.
+		m_first = loader.load(toSubRange(grid, tiles.get(0), range));
+		m_schema = m_first.getRecordSchema();
+		m_ncols = m_schema.getColumnCount();
+		m_geomColIdx = FStream.from(m_schema.streamColumns().toList())
+								.map(Column::name)
+								.toList()
+								.indexOf(geomCol);
+		if ( m_geomColIdx < 0 ) {
+			m_first.closeQuietly();
+			throw new IllegalArgumentException("geometry column is not found: " + geomCol);
+		}
+
+		m_dedup = new TileDeduplicator(grid, range);
+
+		m_remains = tiles.size();
+		boolean submitted = false;
+		try {
+			for ( int i =0; i < tiles.size(); ++i ) {
+				int[] tile = tiles.get(i);
+				Envelope subRange = toSubRange(grid, tile, range);
+				RecordSet preloaded = (i == 0) ? m_first : null;
+				m_futures.add(executor.submit(() -> produce(tile, subRange, preloaded, loader)));
+			}
+			submitted = true;
+		}
+		finally {
+			if ( !submitted ) {
+				// 작업 등록에 실패한 경우는 이미 등록된 작업들을 취소하고,
+				// 시작되지 않은 첫번째 부분 영역 검색 결과를 닫는다.
+				m_closed = true;
+				m_futures.forEach(future -> future.cancel(false));
+				if ( m_futures.isEmpty() || m_futures.get(0).isCancelled() ) {
+					m_first.closeQuietly();
+				}
+			}
+		}
+		s_logger.debug("start parallel reads: nsplits={}, zoom={}", tiles.size(), grid.m_zoom);
+	}
+
+	/**
+	 * 주어진 질의 영역을 나눌 타일 격자를 선택한다.
+	 * 타일 크기는 질의 영역과 겹치는 공간 클러스터들의 타일 크기의 중간 값에 맞추어지며,
+	 * 부분 영역 수가 {@value #MAX_SPLITS}를 넘지 않도록 조정된다.
+	 *
+	 * @param index		공간 인덱스 정보
+	 * @param dsBounds	데이터세트 MBR
+	 * @param range		질의 영역
+	 * @return	타일 격자. 영역을 나눌 필요가 없는 경우는 {@link FOption#empty()}.
+	 */
+	static FOption<TileGrid> selectGrid(GSPClusterIndex index, Envelope dsBounds, Envelope range) {
+		// 결과 레코드 수가 충분히 많지 않으면 나누지 않는다.
+		if ( index.estimateCount(range)[1] < SPLIT_THRESHOLD ) {
+			return FOption.empty();
+		}
+
+		List<Double> sizes = FStream.from(index.getClusters())
+									.filter(cluster -> cluster.m_tileBounds.intersects(range))
+									.map(cluster -> Math.max(cluster.m_tileBounds.getWidth(),
+															cluster.m_tileBounds.getHeight()))
+									.toList();
+		if ( sizes.size() < 2 ) {
+			return FOption.empty();
+		}
+		Collections.sort(sizes);
+		double tileSize = sizes.get(sizes.size() / 2);
+
+		double extent = Math.max(dsBounds.getWidth(), dsBounds.getHeight());
+		int zoom = (int)Math.max(0, Math.round(Math.log(extent / tileSize) / Math.log(2)));
+		TileGrid grid = new TileGrid(dsBounds, zoom, range);
+		while ( grid.getTileCount() > MAX_SPLITS && zoom > 0 ) {
+			grid = new TileGrid(dsBounds, --zoom, range);
+		}
+
+		return (grid.getTileCount() >= 2) ? FOption.of(grid) : FOption.empty();
+	}
+
+	@Override
+	protected void closeInGuard() {
+		m_closed = true;
+
+		for ( Future<?> future: m_futures ) {
+			future.cancel(false);
+		}
+		if ( m_futures.get(0).isCancelled() ) {
+			// 시작되지 않은 첫번째 부분 영역 검색 결과는 여기서 닫는다.
+			m_first.closeQuietly();
+		}
+		m_queue.clear();
+	}
+
+	@Override
+	public RecordSchema getRecordSchema() {
+		return m_schema;
+	}
+
+	@Override
+	public boolean next(Record output) {
+		try {
+			while ( m_remains > 0 ) {
+				Object obj = m_queue.take();
+				if ( obj == END ) {
+					--m_remains;
+				}
+				else if ( obj instanceof Throwable ) {
+					m_remains = 0;
+					throw Throwables.toRuntimeException((Throwable)obj);
+				}
+				else {
+					Record record = (Record)obj;
+					for ( int i =0; i < m_ncols; ++i ) {
+						output.set(i, record.get(i));
+					}
+					return true;
+				}
+			}
+
+			return false;
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while merging parallel reads", e);
+		}
+	}
+
+	private void produce(int[] tile, Envelope subRange, RecordSet preloaded, TileLoader loader) {
+		RecordSet rset = preloaded;
+		try {
+			if ( rset == null ) {
+				rset = loader.load(subRange);
+			}
+
+			Record record;
+			while ( !m_closed && (record = rset.nextCopy()) != null ) {
+				Geometry geom = (Geometry)record.get(m_geomColIdx);
+				if ( geom == null || geom.isEmpty() || !m_dedup.accept(tile[0], tile[1], geom) ) {
+					continue;
+				}
+				put(record);
+			}
+			put(END);
+		}
+		catch ( Throwable e ) {
+			try {
+				put(Throwables.unwrapThrowable(e));
+			}
+			catch ( InterruptedException ignored ) { }
+		}
+		finally {
+			if ( rset != null ) {
+				rset.closeQuietly();
+			}
+		}
+	}
+
+	private void put(Object obj) throws InterruptedException {
+		// 레코드 세트가 닫힌 경우는 더 이상 대기하지 않는다.
+		while ( !m_closed ) {
+			if ( m_queue.offer(obj, 100, TimeUnit.MILLISECONDS) ) {
+				return;
+			}
+		}
+	}
+
+	private static Envelope toSubRange(TileGrid grid, int[] tile, Envelope range) {
+		return grid.getTileBounds(tile[0], tile[1]).intersection(range);
+	}
+}
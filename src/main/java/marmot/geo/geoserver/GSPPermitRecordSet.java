@@ -0,0 +1,84 @@
+package marmot.geo.geoserver;
+
+import java.io.IOException;
+
+import marmot.Record;
+import marmot.RecordSchema;
+import marmot.RecordSet;
+import marmot.RecordSetException;
+import marmot.geo.geoserver.GSPMarmotClientPool.Permit;
+import marmot.rset.AbstractRecordSet;
+
+
+/**
+ * 레코드 세트가 닫힐 때 질의 수행 허가를 반환하는 레코드 세트.
+ * <p>
+ * 페이지 요청 사이에 유지되는 레코드 세트는 {@link #suspend()}로 허가를 미리 반환하고,
+ * 다시 읽기 전에 {@link #resume()}으로 허가를 얻는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPPermitRecordSet extends AbstractRecordSet {
+	private final RecordSet m_src;
+	private final PermitSupplier m_supplier;
+	private Permit m_permit;		// guarded by 'this', 허가가 반환된 경우는 null
+
+	@FunctionalInterface
+	interface PermitSupplier {
+		Permit acquire() throws IOException;
+	}
+
+	GSPPermitRecordSet(RecordSet src, Permit permit, PermitSupplier supplier) {
+		m_src = src;
+		m_permit = permit;
+		m_supplier = supplier;
+	}
+
+	/**
+	 * 레코드 세트를 닫지 않은 상태에서 질의 수행 허가를 반환한다.
+	 */
+	synchronized void suspend() {
+		if ( m_permit != null ) {
+			m_permit.close();
+			m_permit = null;
+		}
+	}
+
+	/**
+	 * {@link #suspend()}로 반환된 질의 수행 허가를 다시 얻는다.
+	 *
+	 * @throws IOException	제한 시간 내에 허가를 얻지 못한 경우.
+	 */
+	synchronized void resume() throws IOException {
+		if ( m_permit == null ) {
+			m_permit = m_supplier.acquire();
+		}
+	}
+
+	@Override
+	protected void closeInGuard() {
+		try {
+			m_src.closeQuietly();
+		}
+		finally {
+			suspend();
+		}
+	}
+
+	@Override
+	public RecordSchema getRecordSchema() {
+		return m_src.getRecordSchema();
+	}
+
+	@Override
+	public boolean next(Record output) {
+		try {
+			resume();
+		}
+		catch ( IOException e ) {
+			throw new RecordSetException("" + e);
+		}
+
+		return m_src.next(output);
+	}
+}
@@ -0,0 +1,96 @@
+package marmot.geo.geoserver;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import marmot.Record;
+import marmot.RecordSet;
+import marmot.support.DefaultRecord;
+
+
+/**
+ * 레코드 세트의 레코드들을 하나의 {@link SimpleFeature} 객체를 재사용하여 반환하는 reader.
+ * <p>
+ * {@link #next()}가 반환하는 feature 객체와 속성 배열은 매 호출마다 재사용되기 때문에,
+ * 호출자는 다음 {@link #next()} 호출 이후에는 이전에 반환된 feature를 사용하면 안된다.
+ * 렌더링처럼 feature를 즉시 소비하는 경우에만 사용하여 레코드별 객체 생성을 줄인다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPReusingFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+	private final SimpleFeatureType m_sfType;
+	private final RecordSet m_rset;
+	private final Record m_record;
+	private final Class<?>[] m_bindings;
+	private final Object[] m_values;
+	private final FeatureIdImpl m_fid;
+	private final SimpleFeatureImpl m_feature;
+	private final String m_fidPrefix;
+
+	private long m_seqno = 0;
+	private Boolean m_hasNext = null;
+
+	GSPReusingFeatureReader(SimpleFeatureType sfType, RecordSet rset) {
+		m_sfType = sfType;
+		m_rset = rset;
+		m_record = DefaultRecord.of(rset.getRecordSchema());
+
+		int nattrs = sfType.getAttributeCount();
+		m_bindings = new Class<?>[nattrs];
+		for ( int i =0; i < nattrs; ++i ) {
+			m_bindings[i] = sfType.getDescriptor(i).getType().getBinding();
+		}
+
+		// SimpleFeatureImpl은 주어진 속성 배열을 복사하지 않고 그대로 사용한다.
+		m_values = new Object[nattrs];
+		m_fidPrefix = sfType.getTypeName() + ".";
+		m_fid = new FeatureIdImpl(m_fidPrefix);
+		m_feature = new SimpleFeatureImpl(m_values, sfType, m_fid, false);
+	}
+
+	@Override
+	public SimpleFeatureType getFeatureType() {
+		return m_sfType;
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		if ( m_hasNext == null ) {
+			m_hasNext = m_rset.next(m_record);
+		}
+
+		return m_hasNext;
+	}
+
+	@Override
+	public SimpleFeature next() throws IOException {
+		if ( !hasNext() ) {
+			throw new NoSuchElementException();
+		}
+		m_hasNext = null;
+
+		for ( int i =0; i < m_values.length; ++i ) {
+			Object value = m_record.get(i);
+			if ( value != null && !m_bindings[i].isInstance(value) ) {
+				value = Converters.convert(value, m_bindings[i]);
+			}
+			m_values[i] = value;
+		}
+		m_fid.setID(m_fidPrefix + (++m_seqno));
+		m_feature.getUserData().clear();
+
+		return m_feature;
+	}
+
+	@Override
+	public void close() throws IOException {
+		m_rset.closeQuietly();
+	}
+}
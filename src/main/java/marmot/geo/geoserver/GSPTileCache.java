@@ -0,0 +1,483 @@
+package marmot.geo.geoserver;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+
+import utils.Throwables;
+import utils.UnitUtils;
+import utils.func.FOption;
+import utils.stream.FStream;
+
+import marmot.Column;
+import marmot.Record;
+import marmot.RecordSchema;
+import marmot.RecordSet;
+import marmot.rset.AbstractRecordSet;
+
+
+/**
+ * 데이터세트별 타일 격자에 정렬된 range query 결과 캐쉬.
+ * <p>
+ * 질의 영역은 데이터세트 MBR을 기준으로 한 4분할 타일 격자에 맞춰 확장되고,
+ * 질의 결과는 캐쉬된 타일들을 조합하여 생성된다. 캐쉬에 없는 타일만 서버에서 읽어온다.
+ * 캐쉬 크기는 저장된 레코드들의 추정 바이트 크기로 제한되며 LRU 방식으로 제거된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPTileCache {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPTileCache.class);
+	private static final int MAX_ZOOM = 24;
+
+	private final Cache<TileKey,Tile> m_cache;
+	private FOption<GSPTilePrefetcher> m_prefetcher = FOption.empty();
+
+	/**
+	 * 타일 영역에 해당하는 레코드 세트를 서버에서 읽어오는 인터페이스.
+	 */
+	@FunctionalInterface
+	interface TileLoader {
+		RecordSet load(Envelope tileBounds) throws Exception;
+	}
+
+	GSPTileCache(long maxBytes) {
+		m_cache = CacheBuilder.newBuilder()
+								.maximumWeight(maxBytes)
+								.weigher((TileKey key, Tile tile) -> tile.m_weight)
+								.recordStats()
+								.build();
+	}
+
+	void setPrefetcher(GSPTilePrefetcher prefetcher) {
+		m_prefetcher = FOption.ofNullable(prefetcher);
+	}
+
+	/**
+	 * 캐쉬된 타일들을 이용하여 주어진 영역과 겹치는 레코드 세트를 생성한다.
+	 *
+	 * @param dsId		대상 데이터세트 식별자
+	 * @param variant	질의 변형(projection 등)을 구분하기 위한 문자열
+	 * @param dsBounds	대상 데이터세트의 MBR
+	 * @param geomCol	공간 컬럼 이름
+	 * @param range		질의 영역
+	 * @param metrics	타일 캐쉬 적중 여부를 기록할 통계 객체
+	 * @param loader	캐쉬에 없는 타일을 읽기 위한 loader
+	 * @return	레코드 세트
+	 */
+	RecordSet query(String dsId, String variant, Envelope dsBounds, String geomCol,
+					Envelope range, GSPLayerMetrics metrics, TileLoader loader) {
+		TileGrid grid = new TileGrid(dsBounds, range);
+
+		List<Tile> tiles = Lists.newArrayList();
+		for ( TileKey key: grid.getTileKeys(dsId, variant) ) {
+			metrics.onCacheAccess(contains(key));
+			tiles.add(getTile(key, grid, geomCol, loader));
+		}
+		if ( s_logger.isDebugEnabled() ) {
+			s_logger.debug("compose tiles: ds={}, zoom={}, ntiles={}, stats={}",
+							dsId, grid.m_zoom, tiles.size(), m_cache.stats());
+		}
+
+		if ( m_prefetcher.isPresent() ) {
+			m_prefetcher.get().schedule(this, dsId, variant, dsBounds, geomCol, grid, loader);
+		}
+
+		return new TileRecordSet(tiles, grid, range);
+	}
+
+	/**
+	 * 주어진 타일이 캐쉬에 없는 경우 이를 적재한다.
+	 *
+	 * @param key		타일 키
+	 * @param dsBounds	대상 데이터세트의 MBR
+	 * @param geomCol	공간 컬럼 이름
+	 * @param loader	타일 loader
+	 */
+	void load(TileKey key, Envelope dsBounds, String geomCol, TileLoader loader) {
+		getTile(key, new TileGrid(dsBounds, key.m_zoom), geomCol, loader);
+	}
+
+	boolean contains(TileKey key) {
+		return m_cache.getIfPresent(key) != null;
+	}
+
+	/**
+	 * 주어진 데이터세트에 해당하는 모든 타일을 캐쉬에서 제거한다.
+	 *
+	 * @param dsId	대상 데이터세트 식별자
+	 */
+	void invalidate(String dsId) {
+		m_cache.asMap().keySet().removeIf(key -> key.m_dsId.equals(dsId));
+	}
+
+	void invalidateAll() {
+		m_cache.invalidateAll();
+	}
+
+	void shutdown() {
+		if ( m_prefetcher.isPresent() ) {
+			m_prefetcher.get().shutdown();
+		}
+		m_cache.invalidateAll();
+	}
+
+	CacheStats getStats() {
+		return m_cache.stats();
+	}
+
+	private Tile getTile(TileKey key, TileGrid grid, String geomCol, TileLoader loader) {
+		try {
+			// 동일 타일에 대한 동시 요청은 하나의 서버 질의로 처리된다.
+			Envelope bounds = grid.getTileBounds(key.m_x, key.m_y);
+			return m_cache.get(key, () -> loadTile(key, bounds, geomCol, loader));
+		}
+		catch ( ExecutionException e ) {
+			throw Throwables.toRuntimeException(Throwables.unwrapThrowable(e));
+		}
+	}
+
+	private static Tile loadTile(TileKey key, Envelope bounds, String geomCol, TileLoader loader)
+		throws Exception {
+		try ( RecordSet rset = loader.load(bounds) ) {
+			RecordSchema schema = rset.getRecordSchema();
+			int geomColIdx = FStream.from(schema.streamColumns().toList())
+									.map(Column::name)
+									.toList()
+									.indexOf(geomCol);
+
+			List<Record> records = Lists.newArrayList();
+			long weight = 0;
+			Record record;
+			while ( (record = rset.nextCopy()) != null ) {
+				records.add(record);
+				weight += estimateSize(record, schema.getColumnCount());
+			}
+			s_logger.debug("loaded: {}, count={}, size={}", key, records.size(),
+							UnitUtils.toByteSizeString(weight));
+
+			return new Tile(key, schema, records, geomColIdx,
+							(int)Math.min(weight, Integer.MAX_VALUE));
+		}
+	}
+
+	static long estimateSize(Record record, int ncols) {
+		long size = 32;
+		for ( int i =0; i < ncols; ++i ) {
+			Object value = record.get(i);
+			if ( value instanceof Geometry ) {
+				size += 48 + ((Geometry)value).getNumPoints() * 16L;
+			}
+			else if ( value instanceof String ) {
+				size += 40 + ((String)value).length() * 2L;
+			}
+			else {
+				size += 16;
+			}
+		}
+
+		return size;
+	}
+
+	static final class TileKey {
+		private final String m_dsId;
+		private final String m_variant;
+		private final int m_zoom;
+		private final int m_x;
+		private final int m_y;
+
+		TileKey(String dsId, String variant, int zoom, int x, int y) {
+			m_dsId = dsId;
+			m_variant = variant;
+			m_zoom = zoom;
+			m_x = x;
+			m_y = y;
+		}
+
+		String getDataSetId() {
+			return m_dsId;
+		}
+
+		String getVariant() {
+			return m_variant;
+		}
+
+		int getZoom() {
+			return m_zoom;
+		}
+
+		int getX() {
+			return m_x;
+		}
+
+		int getY() {
+			return m_y;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if ( this == obj ) {
+				return true;
+			}
+			else if ( obj == null || obj.getClass() != TileKey.class ) {
+				return false;
+			}
+
+			TileKey other = (TileKey)obj;
+			return m_zoom == other.m_zoom && m_x == other.m_x && m_y == other.m_y
+				&& m_dsId.equals(other.m_dsId) && m_variant.equals(other.m_variant);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(m_dsId, m_variant, m_zoom, m_x, m_y);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("tile[%s%s:%d/%d/%d]", m_dsId,
+								m_variant.isEmpty() ? "" : "{" + m_variant + "}", m_zoom, m_x, m_y);
+		}
+	}
+
+	private static final class Tile {
+		private final TileKey m_key;
+		private final RecordSchema m_schema;
+		private final List<Record> m_records;
+		private final int m_geomColIdx;
+		private final int m_weight;
+
+		Tile(TileKey key, RecordSchema schema, List<Record> records, int geomColIdx, int weight) {
+			m_key = key;
+			m_schema = schema;
+			m_records = records;
+			m_geomColIdx = geomColIdx;
+			m_weight = weight;
+		}
+	}
+
+	/**
+	 * 데이터세트 MBR을 기준으로 한 정사각형 타일 격자.
+	 * 줌 레벨 {@code z}에서 타일의 한 변의 길이는 데이터세트 MBR의 긴 변을
+	 * {@code 2^z}로 나눈 값이다.
+	 */
+	static final class TileGrid {
+		final double m_originX;
+		final double m_originY;
+		final double m_tileSize;
+		final int m_zoom;
+		int m_minX, m_minY, m_maxX, m_maxY;
+
+		TileGrid(Envelope dsBounds, int zoom) {
+			m_originX = dsBounds.getMinX();
+			m_originY = dsBounds.getMinY();
+			m_zoom = zoom;
+
+			double extent = Math.max(Math.max(dsBounds.getWidth(), dsBounds.getHeight()), 1e-9);
+			m_tileSize = extent / (1L << zoom);
+		}
+
+		TileGrid(Envelope dsBounds, Envelope range) {
+			this(dsBounds, selectZoom(dsBounds, range), range);
+		}
+
+		TileGrid(Envelope dsBounds, int zoom, Envelope range) {
+			this(dsBounds, Math.min(zoom, MAX_ZOOM));
+
+			m_minX = toTileX(range.getMinX());
+			m_minY = toTileY(range.getMinY());
+			m_maxX = toTileX(range.getMaxX());
+			m_maxY = toTileY(range.getMaxY());
+		}
+
+		List<TileKey> getTileKeys(String dsId, String variant) {
+			List<TileKey> keys = Lists.newArrayList();
+			for ( int y = m_minY; y <= m_maxY; ++y ) {
+				for ( int x = m_minX; x <= m_maxX; ++x ) {
+					keys.add(new TileKey(dsId, variant, m_zoom, x, y));
+				}
+			}
+
+			return keys;
+		}
+
+		int getTileCount() {
+			return (m_maxX - m_minX + 1) * (m_maxY - m_minY + 1);
+		}
+
+		/**
+		 * 주어진 MBR이 격자 영역 내에서 두 개 이상의 타일에 걸치는지 검사한다.
+		 */
+		boolean spansTiles(Envelope envl) {
+			return Math.max(m_minX, toTileX(envl.getMinX())) < Math.min(m_maxX, toTileX(envl.getMaxX()))
+				|| Math.max(m_minY, toTileY(envl.getMinY())) < Math.min(m_maxY, toTileY(envl.getMaxY()));
+		}
+
+		int toTileX(double x) {
+			return clamp((int)Math.floor((x - m_originX) / m_tileSize));
+		}
+
+		int toTileY(double y) {
+			return clamp((int)Math.floor((y - m_originY) / m_tileSize));
+		}
+
+		Envelope getTileBounds(int x, int y) {
+			double minX = m_originX + x * m_tileSize;
+			double minY = m_originY + y * m_tileSize;
+			return new Envelope(minX, minX + m_tileSize, minY, minY + m_tileSize);
+		}
+
+		private int clamp(int idx) {
+			return Math.max(0, Math.min(idx, (int)((1L << m_zoom) - 1)));
+		}
+
+		/**
+		 * 질의 영역이 축별로 2개 내외의 타일로 덮이도록 줌 레벨을 선택한다.
+		 */
+		private static int selectZoom(Envelope dsBounds, Envelope range) {
+			double extent = Math.max(dsBounds.getWidth(), dsBounds.getHeight());
+			double size = Math.max(range.getWidth(), range.getHeight());
+			if ( size <= 0 || extent <= 0 ) {
+				return MAX_ZOOM;
+			}
+
+			int zoom = (int)Math.floor(Math.log(extent / size) / Math.log(2)) + 1;
+			return Math.max(0, Math.min(zoom, MAX_ZOOM));
+		}
+	}
+
+	/**
+	 * 여러 타일에 걸친 레코드가 한번만 반환되도록 하는 중복 제거기.
+	 * <p>
+	 * 레코드는 자신의 소유 타일에서만 반환된다. 소유 타일은 질의 영역으로 잘린 레코드 MBR과
+	 * 겹치는 타일들 중 타일 순서(행 우선)상 가장 앞선, 공간 객체와 실제로 겹치는 타일이다.
+	 * 타일은 공간 객체가 타일 영역과 실제로 겹치는 레코드들로 구성되므로 MBR의 모서리만으로는
+	 * 소유 타일을 정할 수 없기 때문이다. 공간 객체와 겹치는 타일이 없는 경우는 가장 앞선
+	 * 타일을 소유 타일로 한다.
+	 * <p>
+	 * 소유 여부는 레코드의 공간 객체만으로 결정되므로 별도의 상태를 유지하지 않으며,
+	 * 여러 쓰레드에서 동시에 사용할 수 있다. 하나의 타일에만 속한 레코드는 검사하지 않는다.
+	 */
+	static final class TileDeduplicator {
+		private final TileGrid m_grid;
+		private final Envelope m_range;
+		private final GeometryFactory m_factory = new GeometryFactory();
+
+		/**
+		 * 중복 제거기를 생성한다.
+		 *
+		 * @param grid	질의 영역의 타일 격자
+		 * @param range	질의 영역
+		 */
+		TileDeduplicator(TileGrid grid, Envelope range) {
+			m_grid = grid;
+			m_range = range;
+		}
+
+		/**
+		 * 주어진 타일에서 읽은 레코드를 반환해야 하는지 검사한다.
+		 *
+		 * @param x		레코드를 읽은 타일의 x 좌표
+		 * @param y		레코드를 읽은 타일의 y 좌표
+		 * @param geom	레코드의 공간 객체
+		 * @return	주어진 타일이 레코드의 소유 타일인 경우는 {@code true}, 그렇지 않은 경우는 {@code false}.
+		 */
+		boolean accept(int x, int y, Geometry geom) {
+			Envelope envl = geom.getEnvelopeInternal().intersection(m_range);
+			if ( envl.isNull() ) {
+				envl = geom.getEnvelopeInternal();
+			}
+			if ( !m_grid.spansTiles(envl) ) {
+				return true;
+			}
+
+			int minX = Math.max(m_grid.m_minX, m_grid.toTileX(envl.getMinX()));
+			int minY = Math.max(m_grid.m_minY, m_grid.toTileY(envl.getMinY()));
+			int maxX = Math.min(m_grid.m_maxX, m_grid.toTileX(envl.getMaxX()));
+			int maxY = Math.min(m_grid.m_maxY, m_grid.toTileY(envl.getMaxY()));
+			for ( int ty = minY; ty <= maxY; ++ty ) {
+				for ( int tx = minX; tx <= maxX; ++tx ) {
+					Envelope bounds = m_grid.getTileBounds(tx, ty).intersection(m_range);
+					if ( !bounds.isNull() && geom.intersects(m_factory.toGeometry(bounds)) ) {
+						return tx == x && ty == y;
+					}
+				}
+			}
+
+			return minX == x && minY == y;
+		}
+	}
+
+	/**
+	 * 캐쉬된 타일들을 조합하여 질의 영역과 겹치는 레코드들을 반환하는 레코드 세트.
+	 * 여러 타일에 걸친 레코드는 {@link TileDeduplicator}에 따라 소유 타일에서만 반환된다.
+	 */
+	private static class TileRecordSet extends AbstractRecordSet {
+		private final List<Tile> m_tiles;
+		private final Envelope m_range;
+		private final RecordSchema m_schema;
+		private final int m_ncols;
+		private final TileDeduplicator m_dedup;
+
+		private int m_tileIdx = -1;
+		private Tile m_tile = null;
+		private int m_recIdx = 0;
+
+		TileRecordSet(List<Tile> tiles, TileGrid grid, Envelope range) {
+			m_tiles = tiles;
+			m_range = range;
+			m_schema = tiles.get(0).m_schema;
+			m_ncols = m_schema.getColumnCount();
+			m_dedup = new TileDeduplicator(grid, range);
+		}
+
+		@Override
+		protected void closeInGuard() { }
+
+		@Override
+		public RecordSchema getRecordSchema() {
+			return m_schema;
+		}
+
+		@Override
+		public boolean next(Record output) {
+			while ( true ) {
+				while ( m_tile == null || m_recIdx >= m_tile.m_records.size() ) {
+					if ( ++m_tileIdx >= m_tiles.size() ) {
+						return false;
+					}
+
+					m_tile = m_tiles.get(m_tileIdx);
+					m_recIdx = 0;
+				}
+
+				Record record = m_tile.m_records.get(m_recIdx++);
+				if ( m_tile.m_geomColIdx >= 0 ) {
+					Geometry geom = (Geometry)record.get(m_tile.m_geomColIdx);
+					if ( geom == null || geom.isEmpty()
+						|| !geom.getEnvelopeInternal().intersects(m_range) ) {
+						continue;
+					}
+					if ( !m_dedup.accept(m_tile.m_key.getX(), m_tile.m_key.getY(), geom) ) {
+						continue;
+					}
+				}
+
+				for ( int i =0; i < m_ncols; ++i ) {
+					output.set(i, record.get(i));
+				}
+				return true;
+			}
+		}
+	}
+}
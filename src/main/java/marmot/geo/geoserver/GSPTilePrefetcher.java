@@ -0,0 +1,155 @@
+package marmot.geo.geoserver;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.locationtech.jts.geom.Envelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import marmot.geo.geoserver.GSPTileCache.TileGrid;
+import marmot.geo.geoserver.GSPTileCache.TileKey;
+import marmot.geo.geoserver.GSPTileCache.TileLoader;
+
+
+/**
+ * 타일 캐쉬를 통해 질의가 처리된 후, 이후 요청될 가능성이 높은 주변 타일들
+ * (동일 줌 레벨의 인접 타일, 상위/하위 줌 레벨의 타일)을 백그라운드에서 미리 적재한다.
+ * <p>
+ * 여러 클라이언트가 동일 데이터세트를 보는 경우가 있으므로 다른 질의의 prefetch 작업을
+ * 취소하지 않는다. 대신 질의당 등록하는 타일 수와 데이터 저장소별 대기 중인 작업 수를
+ * 제한하여, prefetch가 질의 수행 허가를 두고 일반 질의와 과도하게 경쟁하지 않도록 한다.
+ * 작업 큐가 가득 찬 경우는 가장 오래된 작업을 버린다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPTilePrefetcher {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPTilePrefetcher.class);
+	private static final int QUEUE_LENGTH = 32;
+	private static final int MAX_TILES_PER_QUERY = 8;
+
+	private final ThreadPoolExecutor m_executor;
+	private final Set<TileKey> m_pendings = ConcurrentHashMap.newKeySet();
+
+	GSPTilePrefetcher(int nworkers) {
+		AtomicInteger seqno = new AtomicInteger(0);
+		ThreadFactory factory = task -> {
+			Thread thread = new Thread(task, "gsp-prefetch-" + seqno.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		// 작업 큐가 가득 찬 경우는 가장 오래된 prefetch 작업을 버린다.
+		m_executor = new ThreadPoolExecutor(nworkers, nworkers, 30, TimeUnit.SECONDS,
+											new ArrayBlockingQueue<>(QUEUE_LENGTH), factory,
+											(task, executor) -> {
+			if ( !executor.isShutdown() ) {
+				Runnable oldest = executor.getQueue().poll();
+				if ( oldest instanceof PrefetchTask ) {
+					m_pendings.remove(((PrefetchTask)oldest).m_key);
+				}
+				executor.execute(task);
+			}
+		});
+		m_executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * 주어진 질의 타일 영역의 주변 타일들에 대한 prefetch 작업을 등록한다.
+	 *
+	 * @param cache		타일 캐쉬
+	 * @param dsId		대상 데이터세트 식별자
+	 * @param variant	질의 변형 식별 문자열
+	 * @param dsBounds	대상 데이터세트의 MBR
+	 * @param geomCol	공간 컬럼 이름
+	 * @param served	질의 처리에 사용된 타일 격자
+	 * @param loader	타일 loader
+	 */
+	void schedule(GSPTileCache cache, String dsId, String variant, Envelope dsBounds,
+					String geomCol, TileGrid served, TileLoader loader) {
+		// 화면 이동 가능성이 높은 동일 줌 레벨의 인접 타일을 우선한다.
+		List<TileKey> neighbors = Lists.newArrayList();
+		int maxIdx = (int)((1L << served.m_zoom) - 1);
+		for ( int y = served.m_minY-1; y <= served.m_maxY+1; ++y ) {
+			for ( int x = served.m_minX-1; x <= served.m_maxX+1; ++x ) {
+				boolean inside = x >= served.m_minX && x <= served.m_maxX
+								&& y >= served.m_minY && y <= served.m_maxY;
+				if ( !inside && x >= 0 && y >= 0 && x <= maxIdx && y <= maxIdx ) {
+					neighbors.add(new TileKey(dsId, variant, served.m_zoom, x, y));
+				}
+			}
+		}
+
+		// 질의 영역을 덮는 상위/하위 줌 레벨 타일
+		Envelope area = served.getTileBounds(served.m_minX, served.m_minY);
+		area.expandToInclude(served.getTileBounds(served.m_maxX, served.m_maxY));
+		area.expandBy(-served.m_tileSize * 1e-6);	// 경계에 걸친 타일이 포함되지 않도록 한다.
+		if ( served.m_zoom > 0 ) {
+			neighbors.addAll(new TileGrid(dsBounds, served.m_zoom-1, area).getTileKeys(dsId, variant));
+		}
+		neighbors.addAll(new TileGrid(dsBounds, served.m_zoom+1, area).getTileKeys(dsId, variant));
+
+		int nscheduleds = 0;
+		for ( TileKey key: neighbors ) {
+			if ( nscheduleds >= MAX_TILES_PER_QUERY ) {
+				break;
+			}
+			
+			// 이미 캐쉬되었거나 다른 질의에 의해 등록된 타일은 건너뛴다.
+			if ( !cache.contains(key) && m_pendings.add(key) ) {
+				m_executor.execute(new PrefetchTask(cache, key, dsBounds, geomCol, loader));
+				++nscheduleds;
+			}
+		}
+	}
+
+	void shutdown() {
+		m_executor.shutdownNow();
+		m_pendings.clear();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[active=%d, pendings=%d]", getClass().getSimpleName(),
+							m_executor.getActiveCount(), m_pendings.size());
+	}
+
+	private class PrefetchTask implements Runnable {
+		private final GSPTileCache m_cache;
+		private final TileKey m_key;
+		private final Envelope m_dsBounds;
+		private final String m_geomCol;
+		private final TileLoader m_loader;
+
+		PrefetchTask(GSPTileCache cache, TileKey key, Envelope dsBounds, String geomCol,
+					TileLoader loader) {
+			m_cache = cache;
+			m_key = key;
+			m_dsBounds = dsBounds;
+			m_geomCol = geomCol;
+			m_loader = loader;
+		}
+
+		@Override
+		public void run() {
+			try {
+				m_cache.load(m_key, m_dsBounds, m_geomCol, m_loader);
+				s_logger.debug("prefetched: {}", m_key);
+			}
+			catch ( Exception e ) {
+				s_logger.debug("fails to prefetch: {}, cause={}", m_key, e.toString());
+			}
+			finally {
+				m_pendings.remove(m_key);
+			}
+		}
+	}
+}
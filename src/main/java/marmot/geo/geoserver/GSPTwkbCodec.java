@@ -0,0 +1,392 @@
+package marmot.geo.geoserver;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+
+/**
+ * 2차원 공간 객체를 TWKB(Tiny Well-Known Binary) 형식으로 변환하는 codec.
+ * <p>
+ * 좌표는 주어진 소숫점 자리수로 정수화된 후 이전 좌표와의 차이 값이 zig-zag varint로
+ * 기록된다. 복원시에는 버퍼에서 읽은 좌표를 {@link PackedCoordinateSequence}가 직접
+ * 사용하는 좌표 배열에 바로 기록하여 중간 {@code Coordinate} 객체를 생성하지 않는다.
+ * Z/M 값이 포함된 TWKB를 읽는 경우 해당 값들은 무시된다.
+ * <p>
+ * Marmot 서버와의 레코드 전송 형식은 서버 측에서 정해지므로, 형식 협상이 가능해질 때까지는
+ * codec만 제공한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class GSPTwkbCodec {
+	static final int MAX_PRECISION = 7;
+	static final GeometryFactory GEOM_FACT
+						= new GeometryFactory(PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+
+	private static final int POINT = 1;
+	private static final int LINESTRING = 2;
+	private static final int POLYGON = 3;
+	private static final int MULTIPOINT = 4;
+	private static final int MULTILINESTRING = 5;
+	private static final int MULTIPOLYGON = 6;
+	private static final int COLLECTION = 7;
+
+	private static final int META_BBOX = 0x01;
+	private static final int META_SIZE = 0x02;
+	private static final int META_IDLIST = 0x04;
+	private static final int META_EXTENDED = 0x08;
+	private static final int META_EMPTY = 0x10;
+
+	private GSPTwkbCodec() {
+		throw new AssertionError("Should not be called: class=" + GSPTwkbCodec.class);
+	}
+
+	/**
+	 * 주어진 공간 객체를 TWKB로 변환한다.
+	 *
+	 * @param geom		대상 공간 객체
+	 * @param precision	좌표 소숫점 자리수 (-7 ~ 7)
+	 * @return	TWKB 바이트 배열
+	 */
+	static byte[] encode(Geometry geom, int precision) {
+		if ( precision < -MAX_PRECISION || precision > MAX_PRECISION ) {
+			throw new IllegalArgumentException("invalid TWKB precision: " + precision);
+		}
+
+		Encoder encoder = new Encoder(precision);
+		encoder.writeGeometry(geom);
+		return encoder.toByteArray();
+	}
+
+	static Geometry decode(byte[] bytes) {
+		return decode(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * 버퍼의 현재 위치에서 TWKB 공간 객체 하나를 읽는다.
+	 *
+	 * @param buf	TWKB 버퍼
+	 * @return	공간 객체
+	 */
+	static Geometry decode(ByteBuffer buf) {
+		return new Decoder(buf).readGeometry();
+	}
+
+	private static final class Encoder {
+		private final int m_precision;
+		private final double m_scale;
+		private byte[] m_buf = new byte[64];
+		private int m_length = 0;
+		private long m_prevX, m_prevY;
+
+		Encoder(int precision) {
+			m_precision = precision;
+			m_scale = Math.pow(10, precision);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(m_buf, m_length);
+		}
+
+		void writeGeometry(Geometry geom) {
+			int type = toType(geom);
+			writeByte((zigzag(m_precision) << 4) | type);
+			if ( geom.isEmpty() ) {
+				writeByte(META_EMPTY);
+				return;
+			}
+			writeByte(0);
+
+			// 좌표 차이 값은 공간 객체 단위로 누적된다.
+			m_prevX = m_prevY = 0;
+			switch ( type ) {
+				case POINT:
+					writePoints(((Point)geom).getCoordinateSequence(), false);
+					break;
+				case LINESTRING:
+					writePoints(((LineString)geom).getCoordinateSequence(), true);
+					break;
+				case POLYGON:
+					writePolygon((Polygon)geom);
+					break;
+				case MULTIPOINT: {
+					// TWKB는 multi-point 내의 빈 점을 표현할 수 없으므로 제외한다.
+					int npoints = 0;
+					for ( int i =0; i < geom.getNumGeometries(); ++i ) {
+						npoints += geom.getGeometryN(i).isEmpty() ? 0 : 1;
+					}
+					writeVarint(npoints);
+					for ( int i =0; i < geom.getNumGeometries(); ++i ) {
+						Point pt = (Point)geom.getGeometryN(i);
+						if ( !pt.isEmpty() ) {
+							writePoints(pt.getCoordinateSequence(), false);
+						}
+					}
+					break;
+				}
+				case MULTILINESTRING:
+				case MULTIPOLYGON:
+					writeVarint(geom.getNumGeometries());
+					for ( int i =0; i < geom.getNumGeometries(); ++i ) {
+						Geometry part = geom.getGeometryN(i);
+						if ( type == MULTILINESTRING ) {
+							writePoints(((LineString)part).getCoordinateSequence(), true);
+						}
+						else {
+							writePolygon((Polygon)part);
+						}
+					}
+					break;
+				default:
+					writeVarint(geom.getNumGeometries());
+					for ( int i =0; i < geom.getNumGeometries(); ++i ) {
+						writeGeometry(geom.getGeometryN(i));
+					}
+					break;
+			}
+		}
+
+		private void writePolygon(Polygon poly) {
+			if ( poly.isEmpty() ) {
+				writeVarint(0);
+				return;
+			}
+
+			writeVarint(poly.getNumInteriorRing() + 1);
+			writePoints(poly.getExteriorRing().getCoordinateSequence(), true);
+			for ( int i =0; i < poly.getNumInteriorRing(); ++i ) {
+				writePoints(poly.getInteriorRingN(i).getCoordinateSequence(), true);
+			}
+		}
+
+		private void writePoints(CoordinateSequence seq, boolean withCount) {
+			int npoints = seq.size();
+			if ( withCount ) {
+				writeVarint(npoints);
+			}
+			for ( int i =0; i < npoints; ++i ) {
+				long x = Math.round(seq.getX(i) * m_scale);
+				long y = Math.round(seq.getY(i) * m_scale);
+				writeVarint(zigzag(x - m_prevX));
+				writeVarint(zigzag(y - m_prevY));
+				m_prevX = x;
+				m_prevY = y;
+			}
+		}
+
+		private void writeVarint(long value) {
+			while ( (value & ~0x7FL) != 0 ) {
+				writeByte((int)((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			writeByte((int)value);
+		}
+
+		private void writeByte(int value) {
+			if ( m_length == m_buf.length ) {
+				m_buf = Arrays.copyOf(m_buf, m_buf.length * 2);
+			}
+			m_buf[m_length++] = (byte)value;
+		}
+
+		private static int toType(Geometry geom) {
+			if ( geom instanceof Point ) {
+				return POINT;
+			}
+			else if ( geom instanceof LineString ) {
+				return LINESTRING;
+			}
+			else if ( geom instanceof Polygon ) {
+				return POLYGON;
+			}
+			else if ( geom instanceof MultiPoint ) {
+				return MULTIPOINT;
+			}
+			else if ( geom instanceof MultiLineString ) {
+				return MULTILINESTRING;
+			}
+			else if ( geom instanceof MultiPolygon ) {
+				return MULTIPOLYGON;
+			}
+			else if ( geom instanceof GeometryCollection ) {
+				return COLLECTION;
+			}
+			else {
+				throw new IllegalArgumentException("unsupported geometry: " + geom.getGeometryType());
+			}
+		}
+	}
+
+	private static final class Decoder {
+		private final ByteBuffer m_buf;
+		private double m_scale;
+		private int m_extraDims;
+		private long m_prevX, m_prevY;
+
+		Decoder(ByteBuffer buf) {
+			m_buf = buf;
+		}
+
+		Geometry readGeometry() {
+			int header = m_buf.get() & 0xFF;
+			int type = header & 0x0F;
+			m_scale = Math.pow(10, unzigzag(header >>> 4));
+
+			int meta = m_buf.get() & 0xFF;
+			m_extraDims = 0;
+			if ( (meta & META_EXTENDED) != 0 ) {
+				int ext = m_buf.get() & 0xFF;
+				m_extraDims = (ext & 0x01) + ((ext >>> 1) & 0x01);
+			}
+			if ( (meta & META_EMPTY) != 0 ) {
+				return toEmpty(type);
+			}
+			if ( (meta & META_SIZE) != 0 ) {
+				readVarint();
+			}
+			if ( (meta & META_BBOX) != 0 ) {
+				for ( int i =0; i < 2 * (2 + m_extraDims); ++i ) {
+					readVarint();
+				}
+			}
+
+			m_prevX = m_prevY = 0;
+			switch ( type ) {
+				case POINT:
+					return GEOM_FACT.createPoint(readPoints(1));
+				case LINESTRING:
+					return GEOM_FACT.createLineString(readPoints((int)readVarint()));
+				case POLYGON:
+					return readPolygon();
+				case MULTIPOINT: {
+					Point[] points = new Point[readPartCount(meta)];
+					for ( int i =0; i < points.length; ++i ) {
+						points[i] = GEOM_FACT.createPoint(readPoints(1));
+					}
+					return GEOM_FACT.createMultiPoint(points);
+				}
+				case MULTILINESTRING: {
+					LineString[] lines = new LineString[readPartCount(meta)];
+					for ( int i =0; i < lines.length; ++i ) {
+						lines[i] = GEOM_FACT.createLineString(readPoints((int)readVarint()));
+					}
+					return GEOM_FACT.createMultiLineString(lines);
+				}
+				case MULTIPOLYGON: {
+					Polygon[] polys = new Polygon[readPartCount(meta)];
+					for ( int i =0; i < polys.length; ++i ) {
+						polys[i] = readPolygon();
+					}
+					return GEOM_FACT.createMultiPolygon(polys);
+				}
+				case COLLECTION: {
+					Geometry[] geoms = new Geometry[readPartCount(meta)];
+					for ( int i =0; i < geoms.length; ++i ) {
+						geoms[i] = new Decoder(m_buf).readGeometry();
+					}
+					return GEOM_FACT.createGeometryCollection(geoms);
+				}
+				default:
+					throw new IllegalArgumentException("invalid TWKB geometry type: " + type);
+			}
+		}
+
+		private int readPartCount(int meta) {
+			int count = (int)readVarint();
+			if ( (meta & META_IDLIST) != 0 ) {
+				for ( int i =0; i < count; ++i ) {
+					readVarint();
+				}
+			}
+			return count;
+		}
+
+		private Polygon readPolygon() {
+			int nrings = (int)readVarint();
+			if ( nrings == 0 ) {
+				return GEOM_FACT.createPolygon();
+			}
+
+			LinearRing shell = GEOM_FACT.createLinearRing(readPoints((int)readVarint()));
+			LinearRing[] holes = new LinearRing[nrings-1];
+			for ( int i =0; i < holes.length; ++i ) {
+				holes[i] = GEOM_FACT.createLinearRing(readPoints((int)readVarint()));
+			}
+			return GEOM_FACT.createPolygon(shell, holes);
+		}
+
+		private CoordinateSequence readPoints(int npoints) {
+			// 좌표 배열은 복사 없이 좌표 시퀀스가 그대로 사용한다.
+			double[] coords = new double[npoints * 2];
+			for ( int i =0, j =0; i < npoints; ++i ) {
+				m_prevX += unzigzag(readVarint());
+				m_prevY += unzigzag(readVarint());
+				coords[j++] = m_prevX / m_scale;
+				coords[j++] = m_prevY / m_scale;
+				for ( int k =0; k < m_extraDims; ++k ) {
+					readVarint();
+				}
+			}
+			return new PackedCoordinateSequence.Double(coords, 2, 0);
+		}
+
+		private long readVarint() {
+			long value = 0;
+			for ( int shift = 0; ; shift += 7 ) {
+				int b = m_buf.get() & 0xFF;
+				value |= (long)(b & 0x7F) << shift;
+				if ( (b & 0x80) == 0 ) {
+					return value;
+				}
+			}
+		}
+
+		private static Geometry toEmpty(int type) {
+			switch ( type ) {
+				case POINT:
+					return GEOM_FACT.createPoint();
+				case LINESTRING:
+					return GEOM_FACT.createLineString();
+				case POLYGON:
+					return GEOM_FACT.createPolygon();
+				case MULTIPOINT:
+					return GEOM_FACT.createMultiPoint();
+				case MULTILINESTRING:
+					return GEOM_FACT.createMultiLineString();
+				case MULTIPOLYGON:
+					return GEOM_FACT.createMultiPolygon();
+				default:
+					return GEOM_FACT.createGeometryCollection();
+			}
+		}
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
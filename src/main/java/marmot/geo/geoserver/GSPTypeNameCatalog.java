@@ -0,0 +1,231 @@
+package marmot.geo.geoserver;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import utils.func.FOption;
+
+import marmot.MarmotRuntime;
+import marmot.dataset.DataSet;
+import marmot.geo.query.GeoDataStore;
+
+
+/**
+ * GeoServer에 제공할 데이터세트 식별자 목록 캐쉬.
+ * <p>
+ * 목록은 주어진 유효 시간 동안 재사용되며, 유효 시간이 지나면 대상 디렉토리들을 모두 다시
+ * 읽어 이전 목록과 비교하고 제거된 데이터세트를 통보한다. 데이터세트 접두어가 주어진 경우는
+ * 전체 데이터세트가 아닌 접두어들을 포함하는 디렉토리들만 검색하고, 접두어 검사는 trie를
+ * 이용하여 수행한다.
+ * <p>
+ * 밀도 피라미드의 레벨 데이터세트들은 목록에서 제외되며, 대신 피라미드가 생성된 데이터세트들의
+ * 식별자를 따로 유지한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+class GSPTypeNameCatalog {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPTypeNameCatalog.class);
+
+	private final GeoDataStore m_store;
+	private final PrefixTrie m_prefixes;
+	private final List<String> m_rootDirs;
+	private final long m_ttlMillis;
+	private final Consumer<String> m_onRemoved;
+
+	private Set<String> m_snapshot = null;	// guarded by 'this'
+	private Set<String> m_densities = Collections.emptySet();	// guarded by 'this'
+	private long m_loadedAt = 0;			// guarded by 'this'
+
+	/**
+	 * 데이터세트 목록 캐쉬를 생성한다.
+	 *
+	 * @param store		데이터 저장소
+	 * @param prefixes	데이터세트 식별자 접두어 목록. 빈 경우는 모든 데이터세트를 대상으로 한다.
+	 * @param ttlMillis	목록 유효 시간 (밀리초)
+	 * @param onRemoved	목록에서 제거된 데이터세트에 대해 호출될 콜백
+	 */
+	GSPTypeNameCatalog(GeoDataStore store, String[] prefixes, long ttlMillis,
+						Consumer<String> onRemoved) {
+		m_store = store;
+		m_prefixes = new PrefixTrie();
+		for ( String prefix: prefixes ) {
+			m_prefixes.add(prefix);
+		}
+		m_rootDirs = toRootDirs(prefixes);
+		m_ttlMillis = ttlMillis;
+		m_onRemoved = onRemoved;
+	}
+
+	/**
+	 * 현재 유효한 데이터세트 식별자 목록을 반환한다.
+	 *
+	 * @return	데이터세트 식별자 집합
+	 */
+	synchronized Set<String> getDataSetIds() {
+		refreshIfExpired();
+		return m_snapshot;
+	}
+
+	/**
+	 * 현재 유효한 데이터세트 중 밀도 피라미드가 생성된 데이터세트의 식별자 목록을 반환한다.
+	 *
+	 * @return	데이터세트 식별자 집합
+	 */
+	synchronized Set<String> getDensityDataSetIds() {
+		refreshIfExpired();
+		return m_densities;
+	}
+
+	/**
+	 * 다음 요청시 데이터세트 목록을 새로 읽도록 한다.
+	 */
+	synchronized void invalidate() {
+		m_loadedAt = 0;
+	}
+
+	private void refreshIfExpired() {
+		long now = System.currentTimeMillis();
+		if ( m_snapshot == null || (now - m_loadedAt) >= m_ttlMillis ) {
+			refresh();
+			m_loadedAt = now;
+		}
+	}
+
+	private void refresh() {
+		// 접두어가 주어진 경우는 접두어를 포함하는 디렉토리들만 검색한다.
+		List<DataSet> listed = Lists.newArrayList();
+		MarmotRuntime marmot = m_store.getMarmotRuntime();
+		for ( String dir: m_rootDirs ) {
+			for ( DataSet ds: marmot.getDataSetAllInDir(dir, true) ) {
+				if ( ds.hasGeometryColumn() ) {
+					listed.add(ds);
+				}
+			}
+		}
+
+		Set<String> listedIds = Sets.newHashSet();
+		for ( DataSet ds: listed ) {
+			listedIds.add(ds.getId());
+		}
+
+		Set<String> loaded = new TreeSet<>();
+		Set<String> densities = new TreeSet<>();
+		for ( DataSet ds: listed ) {
+			FOption<String> baseId = GSPDensityPyramid.getBaseDataSetId(ds, listedIds);
+			if ( baseId.isPresent() ) {
+				densities.add(baseId.get());
+			}
+			else if ( matches(ds.getId()) ) {
+				loaded.add(ds.getId());
+			}
+		}
+
+		// 밀도 feature 타입 이름이 다른 데이터세트의 타입 이름과 겹치는 경우는 데이터세트를 우선한다.
+		densities.removeIf(id -> !loaded.contains(id)
+								|| loaded.contains(GSPDensityPyramid.toPyramidDir(id)));
+
+		if ( m_snapshot != null ) {
+			Set<String> removed = Sets.difference(m_snapshot, loaded);
+			Set<String> added = Sets.difference(loaded, m_snapshot);
+			if ( !removed.isEmpty() || !added.isEmpty() ) {
+				s_logger.info("dataset catalog changed: added={}, removed={}",
+								added.size(), removed.size());
+			}
+			removed.forEach(m_onRemoved);
+		}
+		m_snapshot = Collections.unmodifiableSet(loaded);
+		m_densities = Collections.unmodifiableSet(densities);
+	}
+
+	private boolean matches(String dsId) {
+		if ( dsId.startsWith("/tmp/") ) {
+			return false;
+		}
+		return m_prefixes.isEmpty() || m_prefixes.matches(dsId);
+	}
+
+	/**
+	 * 주어진 접두어들을 모두 포함하는 최소한의 디렉토리 목록을 구한다.
+	 * 접두어가 없는 경우는 최상위 디렉토리만으로 구성된다.
+	 */
+	private static List<String> toRootDirs(String[] prefixes) {
+		TreeSet<String> dirs = new TreeSet<>();
+		if ( prefixes.length == 0 ) {
+			dirs.add("/");
+		}
+		for ( String prefix: prefixes ) {
+			int idx = prefix.lastIndexOf('/');
+			dirs.add(idx > 0 ? prefix.substring(0, idx) : "/");
+		}
+
+		// 다른 디렉토리의 하위 디렉토리는 재귀 검색시 포함되므로 제외한다.
+		List<String> roots = Lists.newArrayList();
+		for ( String dir: dirs ) {
+			boolean covered = roots.stream()
+									.anyMatch(root -> root.equals("/") || dir.startsWith(root + "/"));
+			if ( !covered ) {
+				roots.add(dir);
+			}
+		}
+
+		return roots;
+	}
+
+	/**
+	 * 문자 단위 접두어 trie.
+	 */
+	static class PrefixTrie {
+		private final Node m_root = new Node();
+		private boolean m_empty = true;
+
+		private static class Node {
+			private final Map<Character,Node> m_children = Maps.newHashMap();
+			private boolean m_terminal = false;
+		}
+
+		void add(String prefix) {
+			Node node = m_root;
+			for ( int i =0; i < prefix.length(); ++i ) {
+				node = node.m_children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+			}
+			node.m_terminal = true;
+			m_empty = false;
+		}
+
+		boolean isEmpty() {
+			return m_empty;
+		}
+
+		/**
+		 * 주어진 문자열이 등록된 접두어 중 하나로 시작하는지 검사한다.
+		 */
+		boolean matches(String str) {
+			Node node = m_root;
+			if ( node.m_terminal ) {
+				return true;
+			}
+			for ( int i =0; i < str.length(); ++i ) {
+				node = node.m_children.get(str.charAt(i));
+				if ( node == null ) {
+					return false;
+				}
+				if ( node.m_terminal ) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package marmot.geo.geoserver;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.TopologyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import utils.Throwables;
+import utils.UnitUtils;
+import utils.stream.FStream;
+
+import marmot.Column;
+import marmot.MarmotRuntime;
+import marmot.Plan;
+import marmot.PlanBuilder;
+import marmot.Record;
+import marmot.RecordSchema;
+import marmot.RecordSet;
+import marmot.geo.CoordinateTransform;
+import marmot.support.DefaultRecord;
+
+
+/**
+ * 데이터세트의 z/x/y 웹 메르카토르 타일을 Mapbox Vector Tile로 생성한다.
+ * <p>
+ * 타일 영역에 대한 range query 결과를 서버에서 EPSG:3857로 변환하여 받아온 후,
+ * 레코드 단위로 타일 영역(버퍼 포함)에 맞게 자르고 타일 좌표로 정수화하여 바로 인코딩한다.
+ * SimpleFeature 객체는 생성하지 않는다. 생성된 타일은 데이터세트 버전별로 캐쉬된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPVectorTileService {
+	private static final Logger s_logger = LoggerFactory.getLogger(GSPVectorTileService.class);
+	private static final String WEB_MERCATOR = "EPSG:3857";
+	private static final double WORLD_HALF_SIZE = 20037508.342789244;
+	private static final int EXTENT = 4096;
+	private static final int BUFFER = 64;
+	private static final int MAX_ZOOM = 24;
+	private static final GeometryFactory GEOM_FACT = new GeometryFactory();
+
+	private final GSPDataStore m_store;
+	private final Cache<String,byte[]> m_tiles;
+
+	GSPVectorTileService(GSPDataStore store, long maxBytes) {
+		m_store = store;
+		m_tiles = CacheBuilder.newBuilder()
+								.maximumWeight(maxBytes)
+								.weigher((String key, byte[] bytes) -> bytes.length)
+								.recordStats()
+								.build();
+	}
+
+	/**
+	 * 주어진 데이터세트의 z/x/y 타일을 MVT 형식으로 반환한다.
+	 *
+	 * @param dsId	대상 데이터세트 식별자
+	 * @param z		줌 레벨
+	 * @param x		타일 열 번호
+	 * @param y		타일 행 번호 (북쪽이 0)
+	 * @return	MVT 바이트 배열
+	 * @throws IOException	타일 생성에 실패한 경우.
+	 */
+	public byte[] getTile(String dsId, int z, int x, int y) throws IOException {
+		if ( z < 0 || z > MAX_ZOOM ) {
+			throw new IllegalArgumentException("invalid zoom level: " + z);
+		}
+		long ntiles = 1L << z;
+		if ( x < 0 || x >= ntiles || y < 0 || y >= ntiles ) {
+			throw new IllegalArgumentException(String.format("invalid tile: %d/%d/%d", z, x, y));
+		}
+
+		GSPDataSetInfo info = m_store.getDataSetInfo(dsId);
+		String key = String.format("%s|%s|%d/%d/%d", dsId, info.getVersion(), z, x, y);
+		try {
+			// 동일 타일에 대한 동시 요청은 하나의 생성 결과를 공유한다.
+			return m_tiles.get(key, () -> buildTile(info, z, x, y));
+		}
+		catch ( ExecutionException | UncheckedExecutionException e ) {
+			Throwable cause = Throwables.unwrapThrowable(e);
+			if ( cause instanceof IOException ) {
+				throw (IOException)cause;
+			}
+			throw new IOException("fails to build vector tile: " + key, cause);
+		}
+	}
+
+	/**
+	 * 주어진 데이터세트에 대해 캐쉬된 모든 타일을 제거한다.
+	 *
+	 * @param dsId	대상 데이터세트 식별자
+	 */
+	public void invalidate(String dsId) {
+		String prefix = dsId + "|";
+		m_tiles.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[ntiles=%d, stats=%s]", getClass().getSimpleName(),
+							m_tiles.size(), m_tiles.stats());
+	}
+
+	private byte[] buildTile(GSPDataSetInfo info, int z, int x, int y) throws Exception {
+		Envelope tileBounds = toTileBounds(z, x, y);
+		Envelope clipBounds = new Envelope(tileBounds);
+		clipBounds.expandBy(tileBounds.getWidth() * BUFFER / EXTENT);
+
+		String geomCol = info.m_gcInfo.name();
+		String srid = info.m_gcInfo.srid();
+		GSPMvtEncoder encoder = new GSPMvtEncoder(GSPUtils.toSimpleFeatureTypeName(info.m_dsId),
+													tileBounds, EXTENT);
+
+		// 검색은 데이터세트 좌표계로 하고, 좌표 변환은 서버에서 수행한다.
+		Envelope range = WEB_MERCATOR.equals(srid)
+						? clipBounds
+						: CoordinateTransform.get(WEB_MERCATOR, srid).transform(clipBounds);
+		if ( !range.intersects(info.m_mbr.get()) ) {
+			return encoder.encode();
+		}
+
+		PlanBuilder builder = Plan.builder("build_vector_tile")
+									.query(info.m_dsId, range);
+		if ( !WEB_MERCATOR.equals(srid) ) {
+			builder = builder.transformCrs(geomCol, srid, WEB_MERCATOR);
+		}
+
+		MarmotRuntime marmot = m_store.getMarmotRuntime();
+		Polygon clip = (Polygon)GEOM_FACT.toGeometry(clipBounds);
+		try ( GSPMarmotClientPool.Permit permit = m_store.acquireExecution(info.m_dsId);
+			RecordSet rset = marmot.executeToRecordSet(builder.build()) ) {
+			RecordSchema schema = rset.getRecordSchema();
+			List<Column> cols = schema.streamColumns().toList();
+			int geomIdx = FStream.from(cols).map(Column::name).toList().indexOf(geomCol);
+			List<String> names = FStream.from(cols)
+										.filter(col -> !col.name().equals(geomCol))
+										.map(Column::name)
+										.toList();
+			Object[] values = new Object[names.size()];
+
+			long seqno = 0;
+			Record record = DefaultRecord.of(schema);
+			while ( rset.next(record) ) {
+				Geometry geom = clip(clip, (Geometry)record.get(geomIdx));
+				if ( geom == null ) {
+					continue;
+				}
+
+				for ( int i =0, j =0; i < cols.size(); ++i ) {
+					if ( i != geomIdx ) {
+						values[j++] = record.get(i);
+					}
+				}
+				encoder.addFeature(seqno++, geom, names, values);
+			}
+		}
+
+		byte[] bytes = encoder.encode();
+		s_logger.debug("built vector tile: ds={}, tile={}/{}/{}, nfeatures={}, size={}",
+						info.m_dsId, z, x, y, encoder.getFeatureCount(),
+						UnitUtils.toByteSizeString(bytes.length));
+
+		return bytes;
+	}
+
+	private static Geometry clip(Polygon clip, Geometry geom) {
+		if ( geom == null || geom.isEmpty() ) {
+			return null;
+		}
+
+		Envelope clipBounds = clip.getEnvelopeInternal();
+		Envelope envl = geom.getEnvelopeInternal();
+		if ( clipBounds.contains(envl) ) {
+			return geom;
+		}
+		if ( !clipBounds.intersects(envl) ) {
+			return null;
+		}
+
+		try {
+			Geometry clipped = clip.intersection(geom);
+			return clipped.isEmpty() ? null : clipped;
+		}
+		catch ( TopologyException e ) {
+			// 유효하지 않은 공간 객체는 보정한 후 다시 시도한다.
+			Geometry clipped = clip.intersection(geom.buffer(0));
+			return clipped.isEmpty() ? null : clipped;
+		}
+	}
+
+	private static Envelope toTileBounds(int z, int x, int y) {
+		double size = 2 * WORLD_HALF_SIZE / (1L << z);
+		double minX = -WORLD_HALF_SIZE + x * size;
+		double maxY = WORLD_HALF_SIZE - y * size;
+
+		return new Envelope(minX, minX + size, maxY - size, maxY);
+	}
+}
@@ -1,109 +1,324 @@
 package marmot.geo.geoserver.rest;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-import org.apache.http.auth.AuthenticationException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.BasicResponseHandler;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import utils.CSV;
 import utils.Tuple;
 import utils.Tuple3;
-import utils.stream.FStream;
+import utils.func.FOption;
 import utils.stream.KeyValueFStream;
 
 import marmot.dataset.DataSet;
 import marmot.geo.geoserver.GSPUtils;
 
 /**
+ * GeoServer REST API 클라이언트.
+ * <p>
+ * 하나의 객체는 keep-alive 연결 풀을 갖는 HTTP 클라이언트를 재사용하며,
+ * 인증 정보는 첫 요청부터 미리(preemptive) 전송된다. 여러 쓰레드가 동시에 사용할 수 있으며,
+ * 사용이 끝나면 {@link #close()}를 호출하여 연결들을 반환하여야 한다.
  * 
  * @author Kang-Woo Lee (ETRI)
  */
-public class GeoServer {
+public class GeoServer implements Closeable {
+	private static final Gson GSON = new GsonBuilder()
+										.setExclusionStrategies(new GsJsonExclusionStrategy())
+										.create();
+	
 	private final String m_urlPrefix;
-	private final String m_userId;
-	private final String m_passwd;
 	private String m_workspace = "marmot";
 	private String m_storeName = "marmot";
 	
+	private final PoolingHttpClientConnectionManager m_connMgr;
+	private final CloseableHttpClient m_client;
+	private final CredentialsProvider m_credsProvider;
+	private final AuthCache m_authCache;
+	
 	public static GeoServer create(String host, int port, String userName, String passwd) {
+		return create(host, port, userName, passwd, Options.DEFAULT);
+	}
+	
+	public static GeoServer create(String host, int port, String userName, String passwd,
+									Options opts) {
 		String url = String.format("http://%s:%d/geoserver/rest", host, port);
 		
-		return new GeoServer(url, userName, passwd);
+		return new GeoServer(url, userName, passwd, opts);
 	}
 	
 	public static GeoServer create(String urlPrefix, String userName, String passwd) {
-		return new GeoServer(urlPrefix, userName, passwd);
+		return new GeoServer(urlPrefix, userName, passwd, Options.DEFAULT);
+	}
+	
+	public static GeoServer create(String urlPrefix, String userName, String passwd,
+									Options opts) {
+		return new GeoServer(urlPrefix, userName, passwd, opts);
 	}
 	
-	private GeoServer(String urlPrefix, String userId, String passwd) {
+	private GeoServer(String urlPrefix, String userId, String passwd, Options opts) {
 		m_urlPrefix = urlPrefix;
-		m_userId = userId;
-		m_passwd = passwd;
+		
+		URI uri = URI.create(urlPrefix);
+		HttpHost target = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+		m_credsProvider = new BasicCredentialsProvider();
+		m_credsProvider.setCredentials(new AuthScope(target.getHostName(), target.getPort()),
+										new UsernamePasswordCredentials(userId, passwd));
+		m_authCache = new BasicAuthCache();
+		m_authCache.put(target, new BasicScheme());
+		
+		m_connMgr = new PoolingHttpClientConnectionManager(opts.m_connTtlMillis,
+															TimeUnit.MILLISECONDS);
+		m_connMgr.setMaxTotal(opts.m_maxConnections);
+		m_connMgr.setDefaultMaxPerRoute(opts.m_maxConnections);
+		m_connMgr.setValidateAfterInactivity(2000);
+		
+		RequestConfig config = RequestConfig.custom()
+											.setConnectTimeout(opts.m_connectTimeoutMillis)
+											.setSocketTimeout(opts.m_socketTimeoutMillis)
+											.setConnectionRequestTimeout(opts.m_connRequestTimeoutMillis)
+											.build();
+		m_client = HttpClients.custom()
+								.setConnectionManager(m_connMgr)
+								.setDefaultRequestConfig(config)
+								.build();
 	}
 	
+	@Override
+	public void close() throws IOException {
+		m_client.close();
+	}
+	
+	/**
+	 * GeoServer 연결 설정.
+	 */
+	public static final class Options {
+		public static final Options DEFAULT = new Options();
+		
+		private int m_maxConnections = 8;
+		private int m_connectTimeoutMillis = 5_000;
+		private int m_socketTimeoutMillis = 60_000;
+		private int m_connRequestTimeoutMillis = 30_000;
+		private long m_connTtlMillis = TimeUnit.MINUTES.toMillis(5);
+		
+		public static Options create() {
+			return new Options();
+		}
+		
+		/**
+		 * 최대 동시 연결 수를 설정한다.
+		 */
+		public Options maxConnections(int count) {
+			Options opts = copy();
+			opts.m_maxConnections = Math.max(count, 1);
+			return opts;
+		}
+		
+		/**
+		 * 연결 및 응답 대기 제한 시간을 설정한다.
+		 * 
+		 * @param connectMillis	연결 설정 제한 시간 (밀리초)
+		 * @param socketMillis	응답 대기 제한 시간 (밀리초)
+		 */
+		public Options timeouts(int connectMillis, int socketMillis) {
+			Options opts = copy();
+			opts.m_connectTimeoutMillis = connectMillis;
+			opts.m_socketTimeoutMillis = socketMillis;
+			return opts;
+		}
+		
+		/**
+		 * 연결 풀에서 사용 가능한 연결을 얻기 위한 최대 대기 시간을 설정한다.
+		 * 동시 요청 수가 최대 동시 연결 수를 넘는 경우, 대기 시간이 지난 요청은 실패한다.
+		 * 
+		 * @param millis	연결 대기 제한 시간 (밀리초)
+		 */
+		public Options connectionRequestTimeout(int millis) {
+			Options opts = copy();
+			opts.m_connRequestTimeoutMillis = millis;
+			return opts;
+		}
+		
+		/**
+		 * 연결 풀에 보관된 연결의 최대 유지 시간을 설정한다.
+		 */
+		public Options connectionTtl(long millis) {
+			Options opts = copy();
+			opts.m_connTtlMillis = millis;
+			return opts;
+		}
+		
+		private Options copy() {
+			Options opts = new Options();
+			opts.m_maxConnections = m_maxConnections;
+			opts.m_connectTimeoutMillis = m_connectTimeoutMillis;
+			opts.m_socketTimeoutMillis = m_socketTimeoutMillis;
+			opts.m_connRequestTimeoutMillis = m_connRequestTimeoutMillis;
+			opts.m_connTtlMillis = m_connTtlMillis;
+			return opts;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("max_conns=%d, timeouts=%d/%d/%dms", m_maxConnections,
+								m_connectTimeoutMillis, m_socketTimeoutMillis,
+								m_connRequestTimeoutMillis);
+		}
+	}
+	
+	/**
+	 * 데이터 저장소에 등록된 레이어들의 데이터세트 식별자 목록을 반환한다.
+	 * 데이터 저장소 범위의 feature type 목록만 요청한다.
+	 * 
+	 * @return	데이터세트 식별자 목록
+	 */
 	public List<String> listLayers() {
+		return listLayers(true);
+	}
+	
+	/**
+	 * 데이터 저장소에 등록된 레이어들의 데이터세트 식별자 목록을 반환한다.
+	 * <p>
+	 * 응답은 전체를 메모리에 적재하지 않고 스트림으로 읽으면서 이름만 추출한다.
+	 * 
+	 * @param storeScoped	{@code true}인 경우는 데이터 저장소의 feature type 목록을,
+	 * 						{@code false}인 경우는 GeoServer 전체 레이어 목록을 요청하여 거른다.
+	 * @return	데이터세트 식별자 목록
+	 */
+	public List<String> listLayers(boolean storeScoped) {
 		try {
-			Tuple3<Integer, String, String> ret = get(getLayersUrl());
-			if ( ret._1 >= 200 && ret._1 < 300 ) {
-				JsonParser gson = new JsonParser();
-				
-				JsonElement layersElm = gson.parse(ret._3).getAsJsonObject()
-											.get("layers");
-				if ( layersElm.isJsonPrimitive() ) {	// 등록된 layer가 없는 경우
+			if ( storeScoped ) {
+				Tuple3<Integer,String,List<String>> ret
+						= execute(new HttpGet(getFeatureTypesUrl() + ".json"),
+								entity -> readNames(entity, "featureTypes", "featureType",
+													this::toDataSetId));
+				if ( ret._1 == 404 ) {	// 데이터 저장소가 등록되지 않은 경우
 					return Collections.emptyList();
 				}
-				
-				JsonArray layers = layersElm.getAsJsonObject()
-											.getAsJsonArray("layer");
-				return FStream.from(layers)
-								.cast(JsonObject.class)
-								.map(o -> o.get("name").getAsString())
-								.filter(fn -> fn.startsWith(m_storeName + ":"))
-								.map(this::parseLayerName)
-								.toList();
+				return checkSuccess(ret);
 			}
 			else {
-				throw new GeoServerException(ret._2);
-			} 
+				String prefix = m_storeName + ":";
+				Tuple3<Integer,String,List<String>> ret
+						= execute(new HttpGet(getLayersUrl()),
+								entity -> readNames(entity, "layers", "layer",
+													fn -> fn.startsWith(prefix) ? parseLayerName(fn) : null));
+				return checkSuccess(ret);
+			}
 		}
-		catch ( IOException | AuthenticationException e ) {
+		catch ( IOException e ) {
 			throw new GeoServerException(e);
 		}
 	}
 	
+	private static <T> T checkSuccess(Tuple3<Integer,String,T> ret) {
+		if ( ret._1 >= 200 && ret._1 < 300 ) {
+			return ret._3;
+		}
+		else {
+			throw new GeoServerException(ret._2);
+		}
+	}
+	
+	/**
+	 * {@code {outer: {inner: [{"name": ...}, ...]}}} 형태의 응답에서 이름들을 읽는다.
+	 * 등록된 항목이 없는 경우 GeoServer는 {@code {outer: ""}}를 반환한다.
+	 * 
+	 * @param mapper	이름 변환 함수. {@code null}을 반환하면 해당 이름은 제외된다.
+	 */
+	static List<String> readNames(HttpEntity entity, String outer, String inner,
+											Function<String,String> mapper) throws IOException {
+		List<String> names = Lists.newArrayList();
+		if ( entity == null ) {
+			return names;
+		}
+		
+		Charset charset = FOption.ofNullable(ContentType.getOrDefault(entity).getCharset())
+								.getOrElse(StandardCharsets.UTF_8);
+		try ( JsonReader reader = new JsonReader(new InputStreamReader(entity.getContent(), charset)) ) {
+			reader.beginObject();
+			while ( reader.hasNext() ) {
+				if ( !reader.nextName().equals(outer) || reader.peek() != JsonToken.BEGIN_OBJECT ) {
+					reader.skipValue();
+					continue;
+				}
+				
+				reader.beginObject();
+				while ( reader.hasNext() ) {
+					if ( !reader.nextName().equals(inner) ) {
+						reader.skipValue();
+						continue;
+					}
+					
+					reader.beginArray();
+					while ( reader.hasNext() ) {
+						reader.beginObject();
+						while ( reader.hasNext() ) {
+							if ( reader.nextName().equals("name") ) {
+								String name = mapper.apply(reader.nextString());
+								if ( name != null ) {
+									names.add(name);
+								}
+							}
+							else {
+								reader.skipValue();
+							}
+						}
+						reader.endObject();
+					}
+					reader.endArray();
+				}
+				reader.endObject();
+			}
+			reader.endObject();
+		}
+		
+		return names;
+	}
+	
 	public void addLayer(DataSet ds) {
 		GsJsonFeatureType type = new GsJsonFeatureType(m_urlPrefix, m_workspace, m_storeName, ds);
-		GsJsonFeatureTypeInfo ftInfo = new GsJsonFeatureTypeInfo(type);
-		Gson gson =  new GsonBuilder()
-						.setExclusionStrategies(new GsJsonExclusionStrategy())
-						.create();
-		String ftJson = gson.toJson(ftInfo).toString();
+		String ftJson = GSON.toJson(new GsJsonFeatureTypeInfo(type));
 
 		try {
 			Tuple3<Integer, String, String> ret = post(getFeatureTypesUrl(), ftJson);
@@ -111,10 +326,10 @@ public class GeoServer {
 				return;
 			}
 			else {
-				throw new GeoServerException(ret._2);
+				throw new GeoServerException(ret._1, ret._2);
 			}
 		}
-		catch ( AuthenticationException | IOException e ) {
+		catch ( IOException e ) {
 			throw new GeoServerException(e);
 		}
 	}
@@ -136,7 +351,7 @@ public class GeoServer {
 				throw new GeoServerException(ret._2);
 			}
 		}
-		catch ( AuthenticationException | IOException | URISyntaxException e ) {
+		catch ( IOException | URISyntaxException e ) {
 			throw new GeoServerException(e);
 		}
 	}
@@ -163,72 +378,68 @@ public class GeoServer {
 		return GSPUtils.toDataSetId(ftName);
 	}
 	
-	private Tuple3<Integer,String,String> get(String url)
-		throws ClientProtocolException, IOException, AuthenticationException {
-		try ( CloseableHttpClient client = HttpClients.createDefault(); ) {
-			HttpGet httpGet = new HttpGet(url);
-			
-		    httpGet.setHeader("Content-type", "application/json");
-		    httpGet.setHeader("Accept", "application/json");
-		    UsernamePasswordCredentials creds  = new UsernamePasswordCredentials(m_userId, m_passwd);
-		    httpGet.addHeader(new BasicScheme().authenticate(creds, httpGet, null));
-
-		    CloseableHttpResponse resp = client.execute(httpGet);
-	    	String details = String.format("%s(%d)", resp.getStatusLine().getReasonPhrase(),
-														resp.getStatusLine().getStatusCode());
-		    int code = resp.getStatusLine().getStatusCode();
-		    if ( code >= 200 && code < 300 ) {
-			    ResponseHandler<String> handler = new BasicResponseHandler();
-			    return Tuple.of(code, details, handler.handleResponse(resp));
-		    }
-		    else {
-		    	return Tuple.of(code, details, (String)null);
-		    }
-		}
-	}
-	
-	private Tuple3<Integer,String,String> post(String url, String postData)
-		throws AuthenticationException, ClientProtocolException, IOException {
-		try ( CloseableHttpClient client = HttpClients.createDefault(); ) {
-			HttpPost httpPost = new HttpPost(url);
-			
-			httpPost.setEntity(new StringEntity(postData, ContentType.APPLICATION_JSON));
-			httpPost.setHeader("Content-type", "application/json");
-			httpPost.setHeader("Accept", "application/json");
-		    UsernamePasswordCredentials creds  = new UsernamePasswordCredentials(m_userId, m_passwd);
-		    httpPost.addHeader(new BasicScheme().authenticate(creds, httpPost, null));
-		    
-		    CloseableHttpResponse resp = client.execute(httpPost);
-	    	String details = String.format("%s(%d)", resp.getStatusLine().getReasonPhrase(),
-											resp.getStatusLine().getStatusCode());
-		    int code = resp.getStatusLine().getStatusCode();
-		    if ( code >= 200 && code < 300 ) {
-			    ResponseHandler<String> handler = new BasicResponseHandler();
-			    return Tuple.of(code, details, handler.handleResponse(resp));
-		    }
-		    else {
-		    	return Tuple.of(code, details, null);
-		    }
-		}
+	private Tuple3<Integer,String,String> get(String url) throws IOException {
+		return execute(new HttpGet(url));
+	}
+	
+	private Tuple3<Integer,String,String> post(String url, String postData) throws IOException {
+		HttpPost httpPost = new HttpPost(url);
+		httpPost.setEntity(new StringEntity(postData, ContentType.APPLICATION_JSON));
+		
+		return execute(httpPost);
 	}
 	
 	private Tuple<Integer,String> delete(String url, Map<String,String> params)
-		throws ClientProtocolException, IOException, AuthenticationException, URISyntaxException {
+		throws IOException, URISyntaxException {
 		URI uri = KeyValueFStream.from(params)
 								.fold(new URIBuilder(url), (b,kv) -> b.addParameter(kv.key(), kv.value()))
 								.build();
-
-		try ( CloseableHttpClient client = HttpClients.createDefault(); ) {
-			HttpDelete httpDelete = new HttpDelete(uri);
-			httpDelete.setHeader("Content-type", "application/json");
-			httpDelete.setHeader("Accept", "application/json");
-		    UsernamePasswordCredentials creds  = new UsernamePasswordCredentials(m_userId, m_passwd);
-		    httpDelete.addHeader(new BasicScheme().authenticate(creds, httpDelete, null));
-		    
-		    CloseableHttpResponse resp = client.execute(httpDelete);
-	    	String details = String.format("%s(%d)", resp.getStatusLine().getReasonPhrase(),
-													resp.getStatusLine().getStatusCode());
-	    	return Tuple.of(resp.getStatusLine().getStatusCode(), details);
+		
+		Tuple3<Integer,String,String> ret = execute(new HttpDelete(uri));
+		return Tuple.of(ret._1, ret._2);
+	}
+	
+	@FunctionalInterface
+	private interface EntityReader<T> {
+		T read(HttpEntity entity) throws IOException;
+	}
+	
+	private Tuple3<Integer,String,String> execute(HttpRequestBase req) throws IOException {
+		return execute(req, entity -> (entity != null) ? EntityUtils.toString(entity) : null);
+	}
+	
+	private <T> Tuple3<Integer,String,T> execute(HttpRequestBase req, EntityReader<T> reader)
+		throws IOException {
+		req.setHeader("Content-type", "application/json");
+		req.setHeader("Accept", "application/json");
+		
+		// 인증 캐쉬를 공유하여 첫 요청부터 인증 헤더를 전송한다.
+		HttpClientContext context = HttpClientContext.create();
+		context.setCredentialsProvider(m_credsProvider);
+		context.setAuthCache(m_authCache);
+		
+		try ( CloseableHttpResponse resp = m_client.execute(req, context) ) {
+			int code = resp.getStatusLine().getStatusCode();
+			String details = String.format("%s(%d)", resp.getStatusLine().getReasonPhrase(), code);
+			
+			// 연결이 재사용될 수 있도록 응답 본문은 항상 모두 읽는다.
+			HttpEntity entity = resp.getEntity();
+			try {
+				if ( code >= 200 && code < 300 ) {
+					return Tuple.of(code, details, reader.read(entity));
+				}
+				else {
+					// 오류 응답의 본문에 포함된 원인을 함께 전달한다.
+					String body = (entity != null) ? EntityUtils.toString(entity).trim() : "";
+					if ( body.length() > 0 ) {
+						details = details + ": " + body;
+					}
+					return Tuple.of(code, details, (T)null);
+				}
+			}
+			finally {
+				EntityUtils.consume(entity);
+			}
 		}
 	}
 	
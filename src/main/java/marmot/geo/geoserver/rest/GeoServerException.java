@@ -9,12 +9,32 @@ import marmot.MarmotRuntimeException;
 public class GeoServerException extends MarmotRuntimeException {
 	private static final long serialVersionUID = 2279095051087998901L;
 	
+	private final int m_statusCode;
+	
 	public GeoServerException(String details) {
+		this(-1, details);
+	}
+	
+	public GeoServerException(int statusCode, String details) {
 		super(details);
+		
+		m_statusCode = statusCode;
 	}
 	
 	public GeoServerException(Exception cause) {
 		super(cause);
+		
+		m_statusCode = -1;
+	}
+	
+	/**
+	 * GeoServer가 반환한 HTTP 응답 코드를 반환한다.
+	 * 응답을 받지 못한 경우는 -1을 반환한다.
+	 * 
+	 * @return	HTTP 응답 코드
+	 */
+	public int getStatusCode() {
+		return m_statusCode;
 	}
 
 }
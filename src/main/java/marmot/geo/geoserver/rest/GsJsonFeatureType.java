@@ -1,8 +1,10 @@
 package marmot.geo.geoserver.rest;
 
+import java.util.concurrent.ConcurrentMap;
+
 import org.locationtech.jts.geom.Envelope;
-import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
+import com.google.common.collect.Maps;
 import com.google.gson.annotations.SerializedName;
 
 import marmot.Column;
@@ -38,6 +40,9 @@ public class GsJsonFeatureType {
 	@SerializedName("circularArcPresent") private boolean m_circularArcPresent = false;
 	@SerializedName("attributes") private GsJsonAttributes m_attrs;
 	
+	private static final String LAT_LON_SRID = "EPSG:4326";
+	private static final ConcurrentMap<String,String> s_crsWkts = Maps.newConcurrentMap();
+	
 	public GsJsonFeatureType(String url, String workspace, String storeName, DataSet ds) {
 		m_urlPrefix = url;
 		m_nsUrl = String.format("%s/namespaces/%s.json", url, workspace);
@@ -47,14 +52,17 @@ public class GsJsonFeatureType {
 		
 		GeometryColumnInfo gcInfo = ds.getGeometryColumnInfo();
 		m_srs = gcInfo.srid();
-		CoordinateReferenceSystem crs = CRSUtils.toCRS(m_srs);
-		m_nativeCrs = new GsJsonNativeCRS(crs);
+		m_nativeCrs = new GsJsonNativeCRS(toCrsWkt(m_srs));
 		
+		// 데이터세트 메타데이터에 기록된 MBR과 레코드 수를 그대로 사용하여,
+		// GeoServer가 레이어 등록시 데이터 저장소를 검색하여 bounds를 계산하지 않도록 한다.
 		Envelope envl = ds.getBounds();
 		m_nativeBoundingBox = new GsJsonBoundingBox(envl, m_srs);
 		
-		CoordinateTransform trans = CoordinateTransform.get(m_srs, "EPSG:4326");
-		m_latLonBoundingBox = new GsJsonBoundingBox(trans.transform(envl), "EPSG:4326");
+		Envelope latLonEnvl = m_srs.equals(LAT_LON_SRID)
+							? envl
+							: CoordinateTransform.get(m_srs, LAT_LON_SRID).transform(envl);
+		m_latLonBoundingBox = new GsJsonBoundingBox(latLonEnvl, LAT_LON_SRID);
 		
 		m_store = new GsJsonStore(workspace, storeName, url);
 		m_maxFeatures = ds.getRecordCount();
@@ -71,6 +79,14 @@ public class GsJsonFeatureType {
 							m_urlPrefix, m_ns.m_name, m_store.m_id, m_name);
 	}
 	
+	/**
+	 * 주어진 좌표계의 WKT 문자열을 반환한다.
+	 * EPSG 데이터베이스 조회 비용을 줄이기 위해 SRID별로 캐쉬된다.
+	 */
+	private static String toCrsWkt(String srid) {
+		return s_crsWkts.computeIfAbsent(srid, id -> CRSUtils.toCRS(id).toWKT());
+	}
+	
 	private static class GsJsonNameSpace {
 		@SerializedName("name") private String m_name;
 		@SerializedName("href") private String m_href;
@@ -106,8 +122,8 @@ public class GsJsonFeatureType {
 		@SerializedName("@class") private String m_class = "projected";
 		@SerializedName("$") private String m_crsWkt;
 		
-		GsJsonNativeCRS(CoordinateReferenceSystem crs) {
-			m_crsWkt = crs.toWKT();
+		GsJsonNativeCRS(String crsWkt) {
+			m_crsWkt = crsWkt;
 		}
 	}
 	
@@ -0,0 +1,136 @@
+package marmot.externio.excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Sets;
+
+import marmot.Record;
+import marmot.RecordSetException;
+
+
+/**
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class ParallelExcelRecordSetTest {
+	private static final String THREAD_PREFIX = "excel-reader-";
+
+	@Rule public TemporaryFolder m_tempDir = new TemporaryFolder();
+
+	@Test
+	public void testReadAll() throws Exception {
+		File dir = m_tempDir.newFolder();
+		writeExcel(new File(dir, "a.xlsx"), "a", 3);
+		writeExcel(new File(dir, "b.xlsx"), "b", 2);
+		writeExcel(new File(dir, "c.xlsx"), "c", 4);
+
+		ExcelParameters params = ExcelParameters.create().headerFirst(true).workers(2);
+		try ( ParallelExcelRecordSet rset = new ParallelExcelRecordSet(dir, params) ) {
+			assertEquals(2, rset.getRecordSchema().getColumnCount());
+			assertEquals("id", rset.getRecordSchema().getColumnAt(0).name());
+
+			// 레코드들의 순서는 보장되지 않으므로 식별자 집합으로 비교한다.
+			Set<String> ids = Sets.newHashSet();
+			Record record;
+			while ( (record = rset.nextCopy()) != null ) {
+				ids.add((String)record.get(0));
+			}
+			assertEquals(Sets.newHashSet("a0", "a1", "a2", "b0", "b1",
+										"c0", "c1", "c2", "c3"), ids);
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNoExcelFiles() throws Exception {
+		File dir = m_tempDir.newFolder();
+		new File(dir, "readme.txt").createNewFile();
+
+		new ParallelExcelRecordSet(dir, ExcelParameters.create());
+	}
+
+	@Test
+	public void testBrokenFile() throws Exception {
+		File dir = m_tempDir.newFolder();
+		writeExcel(new File(dir, "a.xlsx"), "a", 3);
+		Files.write(new File(dir, "b.xlsx").toPath(), "not an excel file".getBytes());
+
+		// 깨진 파일이 첫번째로 선택되면 생성 단계에서, 그렇지 않으면 읽는 도중에 오류가 발생한다.
+		ExcelParameters params = ExcelParameters.create().headerFirst(true).workers(2);
+		try ( ParallelExcelRecordSet rset = new ParallelExcelRecordSet(dir, params) ) {
+			while ( rset.nextCopy() != null );
+			fail("should have failed on the broken file");
+		}
+		catch ( RecordSetException expected ) { }
+	}
+
+	@Test(timeout=30_000)
+	public void testCloseStopsWorkers() throws Exception {
+		File dir = m_tempDir.newFolder();
+		// 큐가 가득 차서 작업 쓰레드들이 대기하도록 충분히 많은 레코드를 생성한다.
+		for ( int i =0; i < 3; ++i ) {
+			writeExcel(new File(dir, "f" + i + ".xlsx"), "f" + i, 5000);
+		}
+
+		ExcelParameters params = ExcelParameters.create().headerFirst(true).workers(3);
+		ParallelExcelRecordSet rset = new ParallelExcelRecordSet(dir, params);
+		assertNotNull(rset.nextCopy());
+		rset.close();
+
+		while ( isReaderAlive() ) {
+			Thread.sleep(50);
+		}
+		assertFalse(isReaderAlive());
+	}
+
+	@Test
+	public void testCloseBeforeRead() throws Exception {
+		File dir = m_tempDir.newFolder();
+		writeExcel(new File(dir, "a.xlsx"), "a", 3);
+
+		ParallelExcelRecordSet rset = new ParallelExcelRecordSet(dir,
+												ExcelParameters.create().headerFirst(true));
+		rset.close();
+		rset.close();
+	}
+
+	private static boolean isReaderAlive() {
+		return Thread.getAllStackTraces().keySet().stream()
+					.anyMatch(thread -> thread.getName().startsWith(THREAD_PREFIX)
+										&& thread.isAlive());
+	}
+
+	private static void writeExcel(File file, String prefix, int nrows) throws IOException {
+		try ( XSSFWorkbook workbook = new XSSFWorkbook();
+				OutputStream os = new FileOutputStream(file) ) {
+			Sheet sheet = workbook.createSheet();
+
+			Row header = sheet.createRow(0);
+			header.createCell(0).setCellValue("ID");
+			header.createCell(1).setCellValue("Name");
+			for ( int i =0; i < nrows; ++i ) {
+				Row row = sheet.createRow(i + 1);
+				row.createCell(0).setCellValue(prefix + i);
+				row.createCell(1).setCellValue("name-" + i);
+			}
+
+			workbook.write(os);
+		}
+	}
+}
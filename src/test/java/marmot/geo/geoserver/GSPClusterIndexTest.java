@@ -0,0 +1,81 @@
+package marmot.geo.geoserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import marmot.geo.CRSUtils;
+import marmot.geo.geoserver.GSPClusterIndex.Cluster;
+
+
+/**
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPClusterIndexTest {
+	private static final Envelope TILE0 = new Envelope(127.0, 127.1, 37.5, 37.6);
+	private static final Envelope DATA0 = new Envelope(127.01, 127.09, 37.51, 37.59);
+	private static final Envelope TILE1 = new Envelope(127.1, 127.2, 37.5, 37.6);
+	private static final Envelope DATA1 = new Envelope(127.11, 127.19, 37.51, 37.59);
+	private static final List<Cluster> CLUSTERS = Arrays.asList(
+														new Cluster("0", TILE0, DATA0, 10, 8),
+														new Cluster("1", TILE1, DATA1, 20, 20));
+
+	@Test
+	public void testWgs84DataSet() throws Exception {
+		GSPClusterIndex index = GSPClusterIndex.of("test", CLUSTERS, CRSUtils.toCRS("EPSG:4326"));
+
+		assertArrayEquals(new long[]{28, 28}, index.estimateCount(new Envelope(127, 127.2, 37.5, 37.6)));
+		assertArrayEquals(new long[]{0, 10}, index.estimateCount(new Envelope(127, 127.05, 37.5, 37.6)));
+		assertEquals(new Envelope(127.01, 127.05, 37.51, 37.59),
+					index.estimateBounds(new Envelope(127, 127.05, 37.5, 37.6)));
+	}
+
+	@Test
+	public void testProjectedDataSet() throws Exception {
+		// 공간 인덱스는 경위도 좌표로 기록되어 있으나, 질의 영역은 데이터세트 좌표계를 따른다.
+		CoordinateReferenceSystem crs = CRSUtils.toCRS("EPSG:5186");
+		GSPClusterIndex index = GSPClusterIndex.of("test", CLUSTERS, crs);
+
+		Envelope all = toNative(new Envelope(126.9, 127.3, 37.4, 37.7), crs);
+		assertArrayEquals(new long[]{28, 28}, index.estimateCount(all));
+
+		Envelope first = toNative(new Envelope(126.9, 127.095, 37.4, 37.7), crs);
+		long[] count = index.estimateCount(first);
+		assertEquals(8, count[0]);
+		assertTrue(count[1] >= 8);
+
+		Envelope bounds = index.estimateBounds(all);
+		assertTrue(bounds.toString(), bounds.contains(toNative(DATA0, crs)));
+		assertTrue(bounds.toString(), bounds.contains(toNative(DATA1, crs)));
+
+		Envelope faraway = toNative(new Envelope(129.0, 129.1, 35.0, 35.1), crs);
+		assertArrayEquals(new long[]{0, 0}, index.estimateCount(faraway));
+		assertTrue(index.estimateBounds(faraway).isNull());
+	}
+
+	@Test
+	public void testSplitTileSizeIsNative() throws Exception {
+		CoordinateReferenceSystem crs = CRSUtils.toCRS("EPSG:5186");
+		GSPClusterIndex index = GSPClusterIndex.of("test", CLUSTERS, crs);
+
+		// 경위도 0.1도는 약 9~11km이므로, 변환된 타일 크기는 미터 단위여야 한다.
+		for ( Cluster cluster: index.getClusters() ) {
+			assertTrue(cluster.m_tileBounds.getWidth() > 5_000);
+			assertTrue(cluster.m_tileBounds.getHeight() > 5_000);
+		}
+	}
+
+	private static Envelope toNative(Envelope wgs84, CoordinateReferenceSystem crs) throws Exception {
+		return new ReferencedEnvelope(wgs84, DefaultGeographicCRS.WGS84).transform(crs, true);
+	}
+}
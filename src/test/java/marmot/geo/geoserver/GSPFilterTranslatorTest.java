@@ -0,0 +1,125 @@
+package marmot.geo.geoserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import utils.Tuple;
+import utils.func.FOption;
+
+
+/**
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPFilterTranslatorTest {
+	private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+	private GSPFilterTranslator m_translator;
+
+	@Before
+	public void setup() throws Exception {
+		SimpleFeatureType sfType = DataUtilities.createType("test",
+											"the_geom:Point:srid=4326,name:String,pop:Integer");
+		m_translator = new GSPFilterTranslator(sfType);
+	}
+
+	@Test
+	public void testInclude() {
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(Filter.INCLUDE);
+		assertTrue(ret._1.isAbsent());
+		assertSame(Filter.INCLUDE, ret._2);
+	}
+
+	@Test
+	public void testComparison() {
+		Filter filter = FF.greater(FF.property("pop"), FF.literal(10));
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(filter);
+		assertEquals("(pop != null && pop > 10)", ret._1.get());
+		assertSame(Filter.INCLUDE, ret._2);
+	}
+
+	@Test
+	public void testComparisonWithLiteralOnLeft() {
+		Filter filter = FF.less(FF.literal(10), FF.property("pop"));
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(filter);
+		assertEquals("(pop != null && pop > 10)", ret._1.get());
+	}
+
+	@Test
+	public void testStringLiteralIsQuoted() {
+		Filter filter = FF.equals(FF.property("name"), FF.literal("it's"));
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(filter);
+		assertEquals("name == 'it\\'s'", ret._1.get());
+	}
+
+	@Test
+	public void testCaseInsensitiveStringComparisonIsResidual() {
+		Filter filter = FF.equal(FF.property("name"), FF.literal("a"), false);
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(filter);
+		assertTrue(ret._1.isAbsent());
+		assertSame(filter, ret._2);
+	}
+
+	@Test
+	public void testLike() {
+		Filter prefix = FF.like(FF.property("name"), "ab%", "%", "_", "\\");
+		assertEquals("(name != null && name.startsWith('ab'))",
+					m_translator.translate(prefix)._1.get());
+
+		Filter contains = FF.like(FF.property("name"), "%ab%", "%", "_", "\\");
+		assertEquals("(name != null && name.contains('ab'))",
+					m_translator.translate(contains)._1.get());
+
+		// 문자열 중간의 wildcard는 변환되지 않는다.
+		Filter middle = FF.like(FF.property("name"), "a%b", "%", "_", "\\");
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(middle);
+		assertTrue(ret._1.isAbsent());
+		assertSame(middle, ret._2);
+	}
+
+	@Test
+	public void testAndSplitsResidual() {
+		Filter supported = FF.greater(FF.property("pop"), FF.literal(10));
+		Filter unsupported = FF.like(FF.property("name"), "a%b", "%", "_", "\\");
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(FF.and(supported, unsupported));
+		assertEquals("(pop != null && pop > 10)", ret._1.get());
+		assertSame(unsupported, ret._2);
+	}
+
+	@Test
+	public void testOrWithUnsupportedChildIsResidual() {
+		Filter supported = FF.greater(FF.property("pop"), FF.literal(10));
+		Filter unsupported = FF.like(FF.property("name"), "a%b", "%", "_", "\\");
+		Filter filter = FF.or(supported, unsupported);
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(filter);
+		assertTrue(ret._1.isAbsent());
+		assertSame(filter, ret._2);
+	}
+
+	@Test
+	public void testBBox() {
+		Filter filter = FF.bbox("the_geom", 0, 0, 10, 10, "EPSG:4326");
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(filter);
+		String expr = ret._1.get();
+		assertTrue(expr, expr.startsWith("ST_Intersects(the_geom, ST_GeomFromText('POLYGON"));
+		assertSame(Filter.INCLUDE, ret._2);
+	}
+
+	@Test
+	public void testUnknownPropertyIsResidual() {
+		Filter filter = FF.greater(FF.property("unknown"), FF.literal(10));
+		Tuple<FOption<String>,Filter> ret = m_translator.translate(filter);
+		assertFalse(ret._1.isPresent());
+		assertSame(filter, ret._2);
+	}
+}
@@ -0,0 +1,94 @@
+package marmot.geo.geoserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import marmot.geo.geoserver.GSPHistogram.Snapshot;
+
+
+/**
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPHistogramTest {
+	@Test
+	public void testEmpty() {
+		Snapshot snapshot = new GSPHistogram().snapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getMax());
+		assertEquals(0, snapshot.getP99());
+	}
+
+	@Test
+	public void testSingleValue() {
+		GSPHistogram hist = new GSPHistogram();
+		hist.record(100);
+
+		Snapshot snapshot = hist.snapshot();
+		assertEquals(1, snapshot.getCount());
+		assertEquals(100, snapshot.getMin());
+		assertEquals(100, snapshot.getMax());
+		assertEquals(100, snapshot.getP50());
+		assertEquals(100, snapshot.getP99());
+	}
+
+	@Test
+	public void testPercentilesStayInBucket() {
+		GSPHistogram hist = new GSPHistogram();
+		for ( int i =1; i <= 1000; ++i ) {
+			hist.record(i);
+		}
+
+		Snapshot snapshot = hist.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(1, snapshot.getMin());
+		assertEquals(1000, snapshot.getMax());
+		assertEquals(500.5, snapshot.getMean(), 1e-9);
+		assertInRange(snapshot.getP50(), 256, 511);
+		assertInRange(snapshot.getP90(), 512, 1000);
+		assertInRange(snapshot.getP99(), 512, 1000);
+		assertTrue(snapshot.getP50() <= snapshot.getP90());
+		assertTrue(snapshot.getP90() <= snapshot.getP99());
+	}
+
+	@Test
+	public void testNegativeValueIsRecordedAsZero() {
+		GSPHistogram hist = new GSPHistogram();
+		hist.record(-5);
+
+		Snapshot snapshot = hist.snapshot();
+		assertEquals(1, snapshot.getCount());
+		assertEquals(0, snapshot.getMin());
+		assertEquals(0, snapshot.getP50());
+	}
+
+	@Test
+	public void testLargeValue() {
+		GSPHistogram hist = new GSPHistogram();
+		hist.record(Long.MAX_VALUE);
+
+		Snapshot snapshot = hist.snapshot();
+		assertEquals(Long.MAX_VALUE, snapshot.getMax());
+		assertEquals(Long.MAX_VALUE, snapshot.getP99());
+	}
+
+	@Test
+	public void testReset() {
+		GSPHistogram hist = new GSPHistogram();
+		hist.record(10);
+		hist.reset();
+		hist.record(3);
+
+		Snapshot snapshot = hist.snapshot();
+		assertEquals(1, snapshot.getCount());
+		assertEquals(3, snapshot.getMin());
+		assertEquals(3, snapshot.getMax());
+	}
+
+	private static void assertInRange(long value, long lower, long upper) {
+		assertTrue(String.format("%d is not in [%d, %d]", value, lower, upper),
+					value >= lower && value <= upper);
+	}
+}
@@ -0,0 +1,168 @@
+package marmot.geo.geoserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPMvtEncoderTest {
+	private static final WKTReader WKT = new WKTReader();
+	private static final Envelope TILE_BOUNDS = new Envelope(0, 4096, 0, 4096);
+	private static final List<String> NO_NAMES = Collections.emptyList();
+	private static final Object[] NO_VALUES = new Object[0];
+
+	@Test
+	public void testPointTile() throws Exception {
+		GSPMvtEncoder encoder = new GSPMvtEncoder("t", TILE_BOUNDS, 4096);
+		assertTrue(encoder.addFeature(1, read("POINT (25 4079)"), NO_NAMES, NO_VALUES));
+		assertEquals(1, encoder.getFeatureCount());
+
+		byte[] expected = toBytes(
+			0x1A, 0x13,								// tile.layers
+				0x78, 0x02,							// layer.version = 2
+				0x0A, 0x01, 't',					// layer.name
+				0x12, 0x09,							// layer.features
+					0x08, 0x01,						// feature.id = 1
+					0x18, 0x01,						// feature.type = POINT
+					0x22, 0x03, 0x09, 0x32, 0x22,	// feature.geometry = MoveTo(25,17)
+				0x28, 0x80, 0x20);					// layer.extent = 4096
+		assertArrayEquals(expected, encoder.encode());
+	}
+
+	@Test
+	public void testPolygonExteriorIsClockwise() throws Exception {
+		GSPMvtEncoder encoder = new GSPMvtEncoder("t", TILE_BOUNDS, 4096);
+		// 반시계 방향의 외곽 링은 타일 좌표계에서 시계 방향이 되도록 뒤집혀야 한다.
+		Geometry poly = read("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0))");
+		assertTrue(encoder.addFeature(-1, poly, NO_NAMES, NO_VALUES));
+
+		int[] expected = { 9, 0, 8172, 26, 20, 0, 0, 20, 19, 0, 15 };
+		assertArrayEquals(expected, readGeometryCommands(encoder.encode()));
+	}
+
+	@Test
+	public void testDuplicatePointsAreRemoved() throws Exception {
+		GSPMvtEncoder encoder = new GSPMvtEncoder("t", TILE_BOUNDS, 4096);
+		Geometry line = read("LINESTRING (0 4096, 0.1 4096, 10 4096)");
+		assertTrue(encoder.addFeature(-1, line, NO_NAMES, NO_VALUES));
+
+		int[] expected = { 9, 0, 0, 10, 20, 0 };
+		assertArrayEquals(expected, readGeometryCommands(encoder.encode()));
+	}
+
+	@Test
+	public void testDegenerateGeometriesAreSkipped() throws Exception {
+		GSPMvtEncoder encoder = new GSPMvtEncoder("t", TILE_BOUNDS, 4096);
+		assertFalse(encoder.addFeature(1, read("POINT EMPTY"), NO_NAMES, NO_VALUES));
+		assertFalse(encoder.addFeature(1, read("POLYGON ((0 0, 0.1 0, 0.1 0.1, 0 0))"),
+										NO_NAMES, NO_VALUES));
+		assertFalse(encoder.addFeature(1, read("GEOMETRYCOLLECTION (POINT (1 1))"),
+										NO_NAMES, NO_VALUES));
+		assertEquals(0, encoder.getFeatureCount());
+	}
+
+	@Test
+	public void testAttributesAreShared() throws Exception {
+		GSPMvtEncoder encoder = new GSPMvtEncoder("t", TILE_BOUNDS, 4096);
+		List<String> names = Lists.newArrayList("name", "pop");
+		encoder.addFeature(1, read("POINT (1 1)"), names, new Object[]{"a", 10});
+		encoder.addFeature(2, read("POINT (2 2)"), names, new Object[]{"a", null});
+
+		List<Object[]> layer = readFields(readField(encoder.encode(), 3));
+		assertEquals(2, count(layer, 3));	// keys
+		assertEquals(2, count(layer, 4));	// values
+	}
+
+	private static Geometry read(String wkt) throws ParseException {
+		return WKT.read(wkt);
+	}
+
+	private static byte[] toBytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for ( int i =0; i < values.length; ++i ) {
+			bytes[i] = (byte)values[i];
+		}
+		return bytes;
+	}
+
+	private static int[] readGeometryCommands(byte[] tile) {
+		byte[] layer = readField(tile, 3);
+		byte[] feature = readField(layer, 2);
+		ByteBuffer buf = ByteBuffer.wrap(readField(feature, 4));
+
+		List<Integer> cmds = Lists.newArrayList();
+		while ( buf.hasRemaining() ) {
+			cmds.add((int)readVarint(buf));
+		}
+		return cmds.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static byte[] readField(byte[] msg, int field) {
+		for ( Object[] kv: readFields(msg) ) {
+			if ( (Integer)kv[0] == field ) {
+				return (byte[])kv[1];
+			}
+		}
+		throw new AssertionError("field not found: " + field);
+	}
+
+	private static int count(List<Object[]> fields, int field) {
+		return (int)fields.stream().filter(kv -> (Integer)kv[0] == field).count();
+	}
+
+	private static List<Object[]> readFields(byte[] msg) {
+		List<Object[]> fields = Lists.newArrayList();
+		ByteBuffer buf = ByteBuffer.wrap(msg);
+		while ( buf.hasRemaining() ) {
+			long tag = readVarint(buf);
+			int field = (int)(tag >>> 3);
+			switch ( (int)(tag & 0x7) ) {
+				case 0:
+					fields.add(new Object[]{field, readVarint(buf)});
+					break;
+				case 1:
+					buf.position(buf.position() + 8);
+					break;
+				case 2:
+					byte[] bytes = new byte[(int)readVarint(buf)];
+					buf.get(bytes);
+					fields.add(new Object[]{field, bytes});
+					break;
+				case 5:
+					buf.position(buf.position() + 4);
+					break;
+				default:
+					throw new AssertionError("invalid wire type: " + tag);
+			}
+		}
+		return fields;
+	}
+
+	private static long readVarint(ByteBuffer buf) {
+		long value = 0;
+		for ( int shift = 0; ; shift += 7 ) {
+			byte b = buf.get();
+			value |= (long)(b & 0x7F) << shift;
+			if ( (b & 0x80) == 0 ) {
+				return value;
+			}
+		}
+	}
+}
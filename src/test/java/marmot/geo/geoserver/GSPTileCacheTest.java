@@ -0,0 +1,118 @@
+package marmot.geo.geoserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+import marmot.geo.geoserver.GSPTileCache.TileDeduplicator;
+import marmot.geo.geoserver.GSPTileCache.TileGrid;
+
+
+/**
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPTileCacheTest {
+	private static final Envelope DS_BOUNDS = new Envelope(0, 100, 0, 100);
+	private static final WKTReader WKT = new WKTReader();
+
+	@Test
+	public void testTileGrid() {
+		TileGrid grid = new TileGrid(DS_BOUNDS, 2, new Envelope(10, 60, 30, 40));
+		assertEquals(0, grid.m_minX);
+		assertEquals(2, grid.m_maxX);
+		assertEquals(1, grid.m_minY);
+		assertEquals(1, grid.m_maxY);
+		assertEquals(3, grid.getTileCount());
+		assertEquals(new Envelope(25, 50, 50, 75), grid.getTileBounds(1, 2));
+	}
+
+	@Test
+	public void testTileIndexIsClamped() {
+		TileGrid grid = new TileGrid(DS_BOUNDS, 2, DS_BOUNDS);
+		assertEquals(3, grid.toTileX(100));
+		assertEquals(0, grid.toTileY(-10));
+		assertEquals(16, grid.getTileCount());
+	}
+
+	@Test
+	public void testSpansTiles() {
+		TileGrid grid = new TileGrid(DS_BOUNDS, 2, DS_BOUNDS);
+		assertFalse(grid.spansTiles(new Envelope(10, 20, 10, 20)));
+		assertTrue(grid.spansTiles(new Envelope(20, 30, 10, 20)));
+		assertTrue(grid.spansTiles(new Envelope(10, 20, 20, 30)));
+	}
+
+	@Test
+	public void testSpansTilesWithinGridOnly() {
+		// 격자 영역 밖의 타일에 걸치는 부분은 고려하지 않는다.
+		TileGrid grid = new TileGrid(DS_BOUNDS, 2, new Envelope(0, 49, 0, 49));
+		assertFalse(grid.spansTiles(new Envelope(40, 80, 10, 20)));
+		assertTrue(grid.spansTiles(new Envelope(10, 80, 10, 20)));
+	}
+
+	@Test
+	public void testDeduplicatorAcceptsSpanningRecordOnce() throws Exception {
+		TileGrid grid = new TileGrid(DS_BOUNDS, 2, DS_BOUNDS);
+		TileDeduplicator dedup = new TileDeduplicator(grid, DS_BOUNDS);
+
+		Geometry line = read("LINESTRING (20 10, 30 20)");
+		assertTrue(dedup.accept(0, 0, line));
+		assertFalse(dedup.accept(1, 0, line));
+	}
+
+	@Test
+	public void testDeduplicatorKeepsRecordsWithSameValues() throws Exception {
+		TileGrid grid = new TileGrid(DS_BOUNDS, 2, DS_BOUNDS);
+		TileDeduplicator dedup = new TileDeduplicator(grid, DS_BOUNDS);
+
+		// 값이 동일한 서로 다른 레코드들은 각자 소유 타일에서 반환된다.
+		Geometry line = read("LINESTRING (20 10, 30 20)");
+		assertTrue(dedup.accept(0, 0, line));
+		assertTrue(dedup.accept(0, 0, line));
+	}
+
+	@Test
+	public void testDeduplicatorIgnoresSingleTileRecords() throws Exception {
+		TileGrid grid = new TileGrid(DS_BOUNDS, 2, DS_BOUNDS);
+		TileDeduplicator dedup = new TileDeduplicator(grid, DS_BOUNDS);
+
+		Geometry inside = read("POLYGON ((10 10, 20 10, 20 20, 10 20, 10 10))");
+		assertTrue(dedup.accept(0, 0, inside));
+	}
+
+	@Test
+	public void testOwnerIsFirstIntersectingTile() throws Exception {
+		TileGrid grid = new TileGrid(DS_BOUNDS, 2, DS_BOUNDS);
+		TileDeduplicator dedup = new TileDeduplicator(grid, DS_BOUNDS);
+
+		// MBR의 왼쪽 아래 모서리 타일(0,0)과 겹치지 않는 'ㄱ'자 형태의 선.
+		Geometry line = read("LINESTRING (10 30, 30 30, 30 10)");
+		assertFalse(dedup.accept(0, 0, line));
+		assertTrue(dedup.accept(1, 0, line));
+		assertFalse(dedup.accept(0, 1, line));
+		assertFalse(dedup.accept(1, 1, line));
+	}
+
+	@Test
+	public void testOwnerIsClampedToQueryRange() throws Exception {
+		Envelope range = new Envelope(30, 100, 0, 100);
+		TileGrid grid = new TileGrid(DS_BOUNDS, 2, range);
+		TileDeduplicator dedup = new TileDeduplicator(grid, range);
+
+		// 질의 영역 밖의 타일(0,0)은 소유 타일이 될 수 없다.
+		Geometry line = read("LINESTRING (10 10, 60 10)");
+		assertTrue(dedup.accept(1, 0, line));
+		assertFalse(dedup.accept(2, 0, line));
+	}
+
+	private static Geometry read(String wkt) throws ParseException {
+		return WKT.read(wkt);
+	}
+}
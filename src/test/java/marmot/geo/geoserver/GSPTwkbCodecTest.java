@@ -0,0 +1,87 @@
+package marmot.geo.geoserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+
+/**
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GSPTwkbCodecTest {
+	private static final WKTReader WKT = new WKTReader();
+
+	@Test
+	public void testPoint() throws Exception {
+		assertRoundTrip("POINT (127.123 37.456)", 3);
+	}
+
+	@Test
+	public void testLineString() throws Exception {
+		assertRoundTrip("LINESTRING (0 0, 10.5 -3.25, 20 7.125)", 3);
+	}
+
+	@Test
+	public void testPolygonWithHole() throws Exception {
+		assertRoundTrip("POLYGON ((0 0, 100 0, 100 100, 0 100, 0 0), "
+						+ "(10 10, 10 20, 20 20, 20 10, 10 10))", 0);
+	}
+
+	@Test
+	public void testMultiGeometries() throws Exception {
+		assertRoundTrip("MULTIPOINT ((1 2), (3 4))", 0);
+		assertRoundTrip("MULTILINESTRING ((0 0, 1 1), (2 2, 3 3, 4 5))", 0);
+		assertRoundTrip("MULTIPOLYGON (((0 0, 10 0, 10 10, 0 0)), ((20 20, 30 20, 30 30, 20 20)))", 0);
+	}
+
+	@Test
+	public void testCollection() throws Exception {
+		assertRoundTrip("GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 5 5))", 0);
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		Geometry decoded = GSPTwkbCodec.decode(GSPTwkbCodec.encode(read("POINT EMPTY"), 3));
+		assertTrue(decoded.isEmpty());
+		assertTrue(decoded instanceof Point);
+
+		decoded = GSPTwkbCodec.decode(GSPTwkbCodec.encode(read("POLYGON EMPTY"), 3));
+		assertTrue(decoded.isEmpty());
+	}
+
+	@Test
+	public void testCoordinatesAreRounded() throws Exception {
+		Geometry decoded = GSPTwkbCodec.decode(GSPTwkbCodec.encode(read("POINT (1.23456 -9.87654)"), 2));
+		assertEquals(1.23, decoded.getCoordinate().x, 1e-9);
+		assertEquals(-9.88, decoded.getCoordinate().y, 1e-9);
+	}
+
+	@Test
+	public void testNegativePrecision() throws Exception {
+		Geometry decoded = GSPTwkbCodec.decode(GSPTwkbCodec.encode(read("POINT (1234 5678)"), -2));
+		assertEquals(1200, decoded.getCoordinate().x, 1e-9);
+		assertEquals(5700, decoded.getCoordinate().y, 1e-9);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidPrecision() throws Exception {
+		GSPTwkbCodec.encode(read("POINT (0 0)"), GSPTwkbCodec.MAX_PRECISION + 1);
+	}
+
+	private static void assertRoundTrip(String wkt, int precision) throws ParseException {
+		Geometry geom = read(wkt);
+		Geometry decoded = GSPTwkbCodec.decode(GSPTwkbCodec.encode(geom, precision));
+		assertEquals(geom.getGeometryType(), decoded.getGeometryType());
+		assertTrue(decoded.toText(), geom.equalsExact(decoded, 1e-9));
+	}
+
+	private static Geometry read(String wkt) throws ParseException {
+		return WKT.read(wkt);
+	}
+}
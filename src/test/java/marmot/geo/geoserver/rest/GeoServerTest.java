@@ -0,0 +1,57 @@
+package marmot.geo.geoserver.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+
+
+/**
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class GeoServerTest {
+	@Test
+	public void testReadNamesFromEmptyResponse() throws Exception {
+		// 등록된 항목이 없는 경우 GeoServer는 빈 문자열을 반환한다.
+		assertTrue(readNames("{\"layers\": \"\"}", Function.identity()).isEmpty());
+		assertTrue(readNames("{\"layers\": {}}", Function.identity()).isEmpty());
+		assertTrue(GeoServer.readNames(null, "layers", "layer", Function.identity()).isEmpty());
+	}
+
+	@Test
+	public void testReadNames() throws Exception {
+		String json = "{\"layers\": {\"layer\": ["
+					+ "{\"name\": \"ws:a\", \"href\": \"http://localhost/a.json\"},"
+					+ "{\"href\": \"http://localhost/x.json\", \"name\": \"ws:b\"}"
+					+ "]}}";
+		assertEquals(Arrays.asList("ws:a", "ws:b"), readNames(json, Function.identity()));
+	}
+
+	@Test
+	public void testReadNamesSkipsOtherFields() throws Exception {
+		String json = "{\"other\": {\"layer\": [{\"name\": \"x\"}]},"
+					+ "\"layers\": {\"count\": 2, \"layer\": [{\"name\": \"a\"}, {\"name\": \"b\"}]}}";
+		assertEquals(Arrays.asList("a", "b"), readNames(json, Function.identity()));
+	}
+
+	@Test
+	public void testReadNamesMapperFilters() throws Exception {
+		String json = "{\"layers\": {\"layer\": [{\"name\": \"ws:a\"}, {\"name\": \"other:b\"}]}}";
+		List<String> names = readNames(json,
+									name -> name.startsWith("ws:") ? name.substring(3) : null);
+		assertEquals(Arrays.asList("a"), names);
+	}
+
+	private static List<String> readNames(String json, Function<String,String> mapper)
+		throws Exception {
+		StringEntity entity = new StringEntity(json, ContentType.APPLICATION_JSON);
+		return GeoServer.readNames(entity, "layers", "layer", mapper);
+	}
+}